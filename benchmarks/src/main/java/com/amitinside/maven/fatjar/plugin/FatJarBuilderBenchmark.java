@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.benchmark.BenchmarkConfigurations.*;
+import static com.google.common.base.Charsets.UTF_8;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amitinside.maven.fatjar.plugin.benchmark.SyntheticInputs;
+
+/**
+ * Benchmarks the stages of {@link FatJarBuilder} on synthetic inputs. Located
+ * in the package of the builder to access its stages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FatJarBuilderBenchmark {
+
+    @Param({ "20" })
+    private int jarCount;
+
+    @Param({ "500" })
+    private int classesPerJar;
+
+    @Param({ "1024" })
+    private int classSize;
+
+    @Param({ "12" })
+    private int directoryDepth;
+
+    @Param({ "4" })
+    private int distributions;
+
+    private File workDirectory;
+    private File sourceDirectory;
+    private FatJarBuilder builder;
+    private Bundle bundle;
+    private List<File> classpath;
+    private File bndFile;
+    private File generatedBndFile;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        workDirectory = Files.createTempDirectory("fatjar-benchmark").toFile();
+        sourceDirectory = new File(workDirectory, SOURCE_DIRECTORY_NAME);
+        final File pom = new File(workDirectory, "pom.xml");
+        Files.write(pom.toPath(), "<project/>".getBytes(UTF_8));
+        FileUtils.forceMkdir(new File(workDirectory, TARGET_DIRECTORY_NAME));
+
+        classpath = SyntheticInputs.generateJars(new File(workDirectory, "jars"), jarCount, classesPerJar, classSize,
+                directoryDepth);
+        SyntheticInputs.generateDistributions(sourceDirectory, classpath, distributions);
+
+        final Configurer configurer = newConfigurer(workDirectory, pom);
+        final MavenProject project = new MavenProject();
+        project.setFile(pom);
+        builder = FatJarBuilder.newInstance(configurer, project, Collections.emptyList(), new SystemStreamLog());
+        bundle = ((List<Bundle>) configurer.get(Configurer.Params.BUNDLES)).get(0);
+        bndFile = new File(workDirectory, "bench.bnd");
+        generatedBndFile = new File(workDirectory, "generated.bnd");
+        builder.buildBndConfigFile(bundle, classpath, bndFile);
+    }
+
+    @Setup(Level.Invocation)
+    public void cleanExtraction() throws Exception {
+        FileUtils.deleteDirectory(new File(sourceDirectory, "extracted"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Benchmark
+    public void extractArchives() throws Exception {
+        builder.extractArchives();
+    }
+
+    @Benchmark
+    public void buildBndConfigFile() throws Exception {
+        builder.buildBndConfigFile(bundle, classpath, generatedBndFile);
+    }
+
+    @Benchmark
+    public void executeBnd() throws Exception {
+        builder.executeBnd(bundle, bndFile);
+    }
+
+}
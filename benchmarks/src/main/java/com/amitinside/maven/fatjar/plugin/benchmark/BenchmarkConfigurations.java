@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin.benchmark;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+
+import com.amitinside.maven.fatjar.plugin.Bundle;
+import com.amitinside.maven.fatjar.plugin.Configurer;
+import com.google.common.collect.Lists;
+
+/**
+ * Creates configurations equivalent to the defaults of the mojo parameters
+ */
+public final class BenchmarkConfigurations {
+
+    public static final String SOURCE_DIRECTORY_NAME = "source";
+    public static final String TARGET_DIRECTORY_NAME = "target";
+
+    private BenchmarkConfigurations() {
+        throw new IllegalAccessError("Cannot instantiate");
+    }
+
+    /**
+     * Creates a configuration with a single bundle whose directories are
+     * located in the specified working directory
+     *
+     * @param workDirectory the working directory of the benchmark
+     * @param pom the POM to resolve the dependencies of
+     * @return the configuration
+     */
+    public static Configurer newConfigurer(final File workDirectory, final File pom) {
+        checkNotNull(workDirectory, "Working Directory cannot be null");
+        checkNotNull(pom, "POM cannot be null");
+
+        final Configurer configurer = Configurer.newInstance();
+        //@formatter:off
+        configurer.put(POM_LOCATION, pom.getPath());
+        configurer.put(BUNDLES, Lists.newArrayList(Bundle.newInstance("bench.bundle", "1.0.0", "bench.jar", null, null, null)));
+        configurer.put(BUNDLE_RESOLVABLE, "false");
+        configurer.put(EXTENSION_TO_UNARCHIVE, new String[] { "zip" });
+        configurer.put(SOURCE_DIRECTORY, new File(workDirectory, SOURCE_DIRECTORY_NAME));
+        configurer.put(TARGET_DIRECTORY, new File(workDirectory, TARGET_DIRECTORY_NAME).getPath());
+        configurer.put(UPDATE_VERSION, "false");
+        configurer.put(PLUGIN_VERSION, "benchmark");
+        configurer.put(REPRODUCIBLE_OUTPUT, "false");
+        configurer.put(WRITER_THREADS, "0");
+        configurer.put(COMPRESSION_LEVEL, "6");
+        configurer.put(STORE_COMPRESSED_ENTRIES, "false");
+        configurer.put(WRITER_MEMORY, "256");
+        configurer.put(LOW_MEMORY, "false");
+        configurer.put(MINIMIZE, "false");
+        configurer.put(USE_ANALYSIS_INDEX, "false");
+        configurer.put(ANALYSIS_INDEX_DIRECTORY, new File(workDirectory, "analysis").getPath());
+        configurer.put(ANALYSIS_THREADS, "0");
+        configurer.put(FAIL_ON_CLASS_CONFLICTS, "false");
+        configurer.put(EMBED_DEPENDENCIES, "false");
+        configurer.put(INCREMENTAL, "false");
+        configurer.put(STARTUP_TRAINING, "false");
+        configurer.put(STARTUP_TRAINING_TIMEOUT, "300");
+        configurer.put(STARTUP_ARCHIVE, "false");
+        configurer.put(WRITE_COMPOSITION_REPORT, "false");
+        configurer.put(BUNDLE_SIZE_BUDGET, "0");
+        configurer.put(BUNDLE_ENTRY_BUDGET, "0");
+        configurer.put(DEPENDENCY_SIZE_BUDGET, "0");
+        configurer.put(EXTRACTION_THREADS, "0");
+        configurer.put(EXTRACTION_MODE, "streaming");
+        configurer.put(EXTRACTION_INCLUDES, new String[] { "**/*.jar" });
+        configurer.put(NESTED_ARCHIVE_DEPTH, "2");
+        configurer.put(USE_EXTRACTION_CACHE, "false");
+        configurer.put(EXTRACTION_CACHE_DIRECTORY, new File(workDirectory, "extraction").getPath());
+        configurer.put(EXTRACTION_CACHE_SIZE, "4096");
+        configurer.put(STAGING_MODE, "copy");
+        configurer.put(PIPELINED, "false");
+        configurer.put(PIPELINE_QUEUE_CAPACITY, "16");
+        configurer.put(STAGING_THREADS, "4");
+        configurer.put(VERSIONS_UPDATER, "plugin");
+        //@formatter:on
+        return configurer;
+    }
+
+}
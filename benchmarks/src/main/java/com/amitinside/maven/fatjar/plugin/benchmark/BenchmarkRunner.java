@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line options and writes the results
+ * as JSON to {@code target/jmh-result.json} unless specified otherwise
+ */
+public final class BenchmarkRunner {
+
+    private static final String DEFAULT_RESULT = "target/jmh-result.json";
+
+    private BenchmarkRunner() {
+        throw new IllegalAccessError("Cannot instantiate");
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        // the options of the builder take precedence over the parent ones
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.result(DEFAULT_RESULT);
+        }
+        new Runner(options.build()).run();
+    }
+
+}
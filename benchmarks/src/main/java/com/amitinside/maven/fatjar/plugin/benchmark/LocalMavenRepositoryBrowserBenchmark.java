@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin.benchmark;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.STAGING_MODE;
+import static com.amitinside.maven.fatjar.plugin.benchmark.BenchmarkConfigurations.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.internal.impl.SimpleLocalRepositoryManagerFactory;
+import org.eclipse.aether.repository.LocalRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amitinside.maven.fatjar.plugin.ArtefactResolver;
+import com.amitinside.maven.fatjar.plugin.Configurer;
+import com.amitinside.maven.fatjar.plugin.LocalMavenRepositoryBrowser;
+
+/**
+ * Benchmarks the resolution and staging of the dependencies of a POM from a
+ * synthetic offline local repository
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LocalMavenRepositoryBrowserBenchmark {
+
+    private static final String GROUP_ID = "bench";
+    private static final String VERSION = "1.0";
+
+    @Param({ "copy", "hardlink", "direct" })
+    private String stagingMode;
+
+    @Param({ "50" })
+    private int artefactCount;
+
+    @Param({ "200" })
+    private int classesPerJar;
+
+    private File workDirectory;
+    private File sourceDirectory;
+    private LocalMavenRepositoryBrowser browser;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workDirectory = Files.createTempDirectory("fatjar-benchmark").toFile();
+        sourceDirectory = new File(workDirectory, SOURCE_DIRECTORY_NAME);
+        final File repository = new File(workDirectory, "repository");
+
+        final List<File> jars = SyntheticInputs.generateJars(new File(workDirectory, "jars"), artefactCount,
+                classesPerJar, 1024, 4);
+        final Model model = new Model();
+        model.setModelVersion("4.0.0");
+        model.setGroupId(GROUP_ID);
+        model.setArtifactId("bench-project");
+        model.setVersion(VERSION);
+        model.addProperty("bench.version", VERSION);
+        for (int i = 0; i < jars.size(); i++) {
+            final String artifactId = "artifact-" + i;
+            final File directory = new File(repository, GROUP_ID + '/' + artifactId + '/' + VERSION);
+            FileUtils.copyFile(jars.get(i), new File(directory, artifactId + '-' + VERSION + ".jar"));
+
+            final Dependency dependency = new Dependency();
+            dependency.setGroupId(GROUP_ID);
+            dependency.setArtifactId(artifactId);
+            // half of the versions are resolved from the properties
+            dependency.setVersion(i % 2 == 0 ? "${bench.version}" : VERSION);
+            model.addDependency(dependency);
+        }
+        final File pom = new File(workDirectory, "pom.xml");
+        try (Writer writer = new FileWriter(pom)) {
+            new MavenXpp3Writer().write(writer, model);
+        }
+
+        final RepositorySystem system = MavenRepositorySystemUtils.newServiceLocator()
+                .getService(RepositorySystem.class);
+        final DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
+        session.setLocalRepositoryManager(
+                new SimpleLocalRepositoryManagerFactory().newInstance(session, new LocalRepository(repository)));
+        session.setOffline(true);
+
+        final Configurer configurer = newConfigurer(workDirectory, pom);
+        configurer.put(STAGING_MODE, stagingMode);
+        final ArtefactResolver resolver = ArtefactResolver.newInstance(system, session, Collections.emptyList(), 0);
+        browser = LocalMavenRepositoryBrowser.newInstance(configurer, resolver, new Properties());
+    }
+
+    @Setup(Level.Invocation)
+    public void cleanStaging() throws Exception {
+        FileUtils.deleteDirectory(sourceDirectory);
+        FileUtils.forceMkdir(sourceDirectory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Benchmark
+    public List<File> copyArtefact() throws Exception {
+        return browser.copyArtefact();
+    }
+
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin.benchmark;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amitinside.maven.fatjar.plugin.util.MojoHelper;
+
+/**
+ * Benchmarks the resolution of version properties against project properties
+ * of different sizes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MojoHelperBenchmark {
+
+    @Param({ "10", "1000" })
+    private int propertyCount;
+
+    private Properties properties;
+    private String property;
+
+    @Setup
+    public void setUp() {
+        properties = new Properties();
+        for (int i = 0; i < propertyCount; i++) {
+            properties.setProperty("synthetic" + i + ".version", "1.0." + i);
+        }
+        property = "${synthetic" + propertyCount / 2 + ".version}";
+    }
+
+    @Benchmark
+    public String getVersionOfProperty() {
+        return MojoHelper.getVersion(properties, property);
+    }
+
+    @Benchmark
+    public String getVersionOfLiteral() {
+        return MojoHelper.getVersion(properties, "1.0.0");
+    }
+
+}
@@ -0,0 +1,371 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin.benchmark;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.shared.invoker.DefaultInvocationRequest;
+import org.apache.maven.shared.invoker.DefaultInvoker;
+import org.apache.maven.shared.invoker.InvocationRequest;
+import org.apache.maven.shared.invoker.InvocationResult;
+import org.apache.maven.shared.invoker.PrintStreamHandler;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs {@code makefat} with Maven Invoker on sample projects depending on
+ * 10, 100 and 1000 synthetic JARs, unless other scale points are specified,
+ * plus ZIP distributions with nested JARs. The synthetic artefacts are
+ * deployed to a file based repository and the plugin is taken from the local
+ * repository it has been installed to, so Maven runs offline. Every scale
+ * point is built once to populate the local repository of the scale test and
+ * measured in a second build. The wall time, the peak RSS of the Maven JVM and
+ * the size of the fat JAR of every scale point are written as JSON to
+ * {@code target/scale-test/scale-results.json}.
+ */
+public final class ScaleTestRunner {
+
+    private static final int[] DEFAULT_SCALE_POINTS = { 10, 100, 1000 };
+    private static final String DEFAULT_DIRECTORY = "target/scale-test";
+    private static final String GROUP_ID = "fatjar.scaletest";
+    private static final String VERSION = "1.0.0";
+    private static final String REPOSITORY_ID = "synthetic";
+    private static final String MARKER_PROPERTY = "fatjar.scaletest.point";
+    private static final String PLUGIN_PROPERTIES = "META-INF/maven/com.amitinside/fatjar-maven-plugin/pom.properties";
+    private static final int CLASSES_PER_JAR = 20;
+    private static final int CLASS_SIZE = 1024;
+    private static final int DIRECTORY_DEPTH = 4;
+    private static final int DISTRIBUTIONS = 2;
+    // one additional JAR per ten JARs of a scale point is shipped in the distributions
+    private static final int DISTRIBUTED_JAR_RATIO = 10;
+    private static final long RSS_SAMPLING_INTERVAL = 50;
+
+    private ScaleTestRunner() {
+        throw new IllegalAccessError("Cannot instantiate");
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int[] points = args.length == 0 ? DEFAULT_SCALE_POINTS
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        checkArgument(Arrays.stream(points).allMatch(p -> p > 0), "Scale points must be positive");
+
+        final File directory = new File(System.getProperty("fatjar.scaletest.directory", DEFAULT_DIRECTORY))
+                .getAbsoluteFile();
+        final File mavenHome = mavenHome();
+        final String pluginVersion = pluginVersion();
+        final File installedRepository = new File(System.getProperty("fatjar.scaletest.localRepository",
+                System.getProperty("user.home") + "/.m2/repository")).getAbsoluteFile();
+        checkState(new File(installedRepository, "com/amitinside/fatjar-maven-plugin/" + pluginVersion).isDirectory(),
+                "Plugin %s is not installed in %s", pluginVersion, installedRepository);
+
+        FileUtils.deleteDirectory(directory);
+        final File repository = new File(directory, "repository");
+        final int maxPoint = Arrays.stream(points).max().getAsInt();
+        final List<File> jars = SyntheticInputs.generateJars(new File(directory, "inputs"),
+                maxPoint + maxPoint / DISTRIBUTED_JAR_RATIO + 1, CLASSES_PER_JAR, CLASS_SIZE, DIRECTORY_DEPTH);
+        for (int i = 0; i < maxPoint; i++) {
+            deploy(repository, "synthetic-" + i, "jar", jars.get(i));
+        }
+        final File settings = writeSettings(directory, installedRepository);
+
+        final StringBuilder json = new StringBuilder("[");
+        for (final int point : points) {
+            // the distributed JARs differ from the plain ones to be neither deduplicated nor conflicting
+            final List<File> distributed = jars.subList(maxPoint, maxPoint + point / DISTRIBUTED_JAR_RATIO + 1);
+            final List<String> distributions = Lists.newArrayList();
+            final List<File> zips = SyntheticInputs.generateDistributions(
+                    new File(directory, "inputs/distributions-" + point), distributed, DISTRIBUTIONS);
+            for (int d = 0; d < zips.size(); d++) {
+                final String artifactId = "distribution-" + point + '-' + d;
+                deploy(repository, artifactId, "zip", zips.get(d));
+                distributions.add(artifactId);
+            }
+            final File project = new File(directory, "projects/scale-" + point);
+            writeProject(project, point, distributions, repository, mavenHome, pluginVersion);
+
+            // the first build populates the local repository of the scale test
+            invoke(project, settings, directory, mavenHome, pluginVersion, point, "warmup");
+            final Result result = invoke(project, settings, directory, mavenHome, pluginVersion, point, "measured");
+            System.out.println("Scale point " + point + ": " + result.wallTime + " ms, peak RSS " + result.peakRss
+                    + " bytes, fat JAR " + result.outputSize + " bytes");
+
+            json.append(json.length() == 1 ? "\n" : ",\n");
+            json.append("  {\"jars\": ").append(point);
+            json.append(", \"distributedJars\": ").append(distributed.size());
+            json.append(", \"distributions\": ").append(zips.size());
+            json.append(", \"wallTimeMillis\": ").append(result.wallTime);
+            json.append(", \"peakRssBytes\": ").append(result.peakRss);
+            json.append(", \"outputBytes\": ").append(result.outputSize).append('}');
+            // partial results survive a failing scale point
+            Files.write(new File(directory, "scale-results.json").toPath(),
+                    (json.toString() + "\n]\n").getBytes(UTF_8));
+        }
+    }
+
+    private static Result invoke(final File project, final File settings, final File directory,
+            final File mavenHome, final String pluginVersion, final int point, final String run) throws Exception {
+        final Properties properties = new Properties();
+        // file based repositories remain available in offline mode
+        properties.setProperty("aether.offline.protocols", "file");
+
+        final String mavenOpts = System.getenv("MAVEN_OPTS");
+        final File log = new File(project, run + ".log");
+        try (PrintStream out = new PrintStream(log, UTF_8.name())) {
+            final InvocationRequest request = new DefaultInvocationRequest();
+            //@formatter:off
+            request.setPomFile(new File(project, "pom.xml"))
+                   .setGoals(Collections.singletonList("com.amitinside:fatjar-maven-plugin:" + pluginVersion + ":makefat"))
+                   .setBatchMode(true)
+                   .setOffline(true)
+                   .setShowErrors(true)
+                   .setUserSettingsFile(settings)
+                   .setLocalRepositoryDirectory(new File(directory, "local-repository"))
+                   .setProperties(properties)
+                   // identifies the Maven JVM to sample its RSS
+                   .setMavenOpts((mavenOpts == null ? "" : mavenOpts + ' ') + "-D" + MARKER_PROPERTY + '=' + point)
+                   .setOutputHandler(new PrintStreamHandler(out, true))
+                   .setErrorHandler(new PrintStreamHandler(out, true));
+            //@formatter:on
+            final long start = System.nanoTime();
+            final InvocationResult result;
+            try (RssSampler sampler = RssSampler.start(MARKER_PROPERTY + '=' + point)) {
+                result = new DefaultInvoker().setMavenHome(mavenHome).execute(request);
+                final long wallTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                checkState(result.getExitCode() == 0, "Scale point %s failed with exit code %s, see %s", point,
+                        result.getExitCode(), log);
+                return new Result(wallTime, sampler.getPeakRss(),
+                        FileUtils.sizeOfDirectory(new File(project, "target/fatjar")));
+            }
+        }
+    }
+
+    private static void deploy(final File repository, final String artifactId, final String type,
+            final File file) throws IOException {
+        final File directory = new File(repository,
+                GROUP_ID.replace('.', '/') + '/' + artifactId + '/' + VERSION);
+        FileUtils.copyFile(file, new File(directory, artifactId + '-' + VERSION + '.' + type));
+        //@formatter:off
+        final String pom = "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                         + "  <modelVersion>4.0.0</modelVersion>\n"
+                         + "  <groupId>" + GROUP_ID + "</groupId>\n"
+                         + "  <artifactId>" + artifactId + "</artifactId>\n"
+                         + "  <version>" + VERSION + "</version>\n"
+                         + "  <packaging>" + type + "</packaging>\n"
+                         + "</project>\n";
+        //@formatter:on
+        Files.write(new File(directory, artifactId + '-' + VERSION + ".pom").toPath(), pom.getBytes(UTF_8));
+    }
+
+    /**
+     * Serves everything but the synthetic artefacts from the local repository
+     * the plugin has been installed to
+     */
+    private static File writeSettings(final File directory, final File installedRepository) throws IOException {
+        //@formatter:off
+        final String settings = "<settings xmlns=\"http://maven.apache.org/SETTINGS/1.0.0\">\n"
+                              + "  <mirrors>\n"
+                              + "    <mirror>\n"
+                              + "      <id>installed</id>\n"
+                              + "      <mirrorOf>*,!" + REPOSITORY_ID + "</mirrorOf>\n"
+                              + "      <url>" + installedRepository.toURI() + "</url>\n"
+                              + "    </mirror>\n"
+                              + "  </mirrors>\n"
+                              + "</settings>\n";
+        //@formatter:on
+        final File file = new File(directory, "settings.xml");
+        Files.write(file.toPath(), settings.getBytes(UTF_8));
+        return file;
+    }
+
+    private static void writeProject(final File project, final int point, final List<String> distributions,
+            final File repository, final File mavenHome, final String pluginVersion) throws IOException {
+        final StringBuilder dependencies = new StringBuilder();
+        for (int i = 0; i < point; i++) {
+            appendDependency(dependencies, "synthetic-" + i, "jar");
+        }
+        for (final String distribution : distributions) {
+            appendDependency(dependencies, distribution, "zip");
+        }
+        //@formatter:off
+        final String pom = "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                         + "  <modelVersion>4.0.0</modelVersion>\n"
+                         + "  <groupId>" + GROUP_ID + "</groupId>\n"
+                         + "  <artifactId>scale-" + point + "</artifactId>\n"
+                         + "  <version>" + VERSION + "</version>\n"
+                         + "  <packaging>pom</packaging>\n"
+                         + "  <repositories>\n"
+                         + "    <repository>\n"
+                         + "      <id>" + REPOSITORY_ID + "</id>\n"
+                         + "      <url>" + repository.toURI() + "</url>\n"
+                         + "    </repository>\n"
+                         + "  </repositories>\n"
+                         + "  <dependencies>\n"
+                         + dependencies
+                         + "  </dependencies>\n"
+                         + "  <build>\n"
+                         + "    <plugins>\n"
+                         + "      <plugin>\n"
+                         + "        <groupId>com.amitinside</groupId>\n"
+                         + "        <artifactId>fatjar-maven-plugin</artifactId>\n"
+                         + "        <version>" + pluginVersion + "</version>\n"
+                         + "        <configuration>\n"
+                         + "          <mavenLocation>" + mavenHome.getPath() + "</mavenLocation>\n"
+                         + "          <bundleSymbolicName>" + GROUP_ID + ".scale" + point + "</bundleSymbolicName>\n"
+                         + "          <bundleVersion>" + VERSION + "</bundleVersion>\n"
+                         + "          <extensionsToUnarchive>\n"
+                         + "            <param>zip</param>\n"
+                         + "          </extensionsToUnarchive>\n"
+                         + "          <targetDirectory>${project.build.directory}/fatjar</targetDirectory>\n"
+                         + "          <updateDependencyVersions>false</updateDependencyVersions>\n"
+                         + "          <skipIfUpToDate>false</skipIfUpToDate>\n"
+                         + "        </configuration>\n"
+                         + "      </plugin>\n"
+                         + "    </plugins>\n"
+                         + "  </build>\n"
+                         + "</project>\n";
+        //@formatter:on
+        FileUtils.forceMkdir(project);
+        Files.write(new File(project, "pom.xml").toPath(), pom.getBytes(UTF_8));
+    }
+
+    private static void appendDependency(final StringBuilder dependencies, final String artifactId,
+            final String type) {
+        dependencies.append("    <dependency>\n");
+        dependencies.append("      <groupId>").append(GROUP_ID).append("</groupId>\n");
+        dependencies.append("      <artifactId>").append(artifactId).append("</artifactId>\n");
+        dependencies.append("      <version>").append(VERSION).append("</version>\n");
+        dependencies.append("      <type>").append(type).append("</type>\n");
+        dependencies.append("    </dependency>\n");
+    }
+
+    private static File mavenHome() {
+        String home = System.getProperty("maven.home");
+        if (home == null) {
+            home = System.getenv("M2_HOME");
+        }
+        if (home == null) {
+            home = System.getenv("MAVEN_HOME");
+        }
+        checkState(home != null, "Maven Home must be set with -Dmaven.home or the M2_HOME environment variable");
+        return new File(home).getAbsoluteFile();
+    }
+
+    private static String pluginVersion() throws IOException {
+        final String version = System.getProperty("fatjar.version");
+        if (version != null) {
+            return version;
+        }
+        try (InputStream in = ScaleTestRunner.class.getClassLoader().getResourceAsStream(PLUGIN_PROPERTIES)) {
+            checkState(in != null, "Plugin version must be set with -Dfatjar.version");
+            final Properties properties = new Properties();
+            properties.load(in);
+            return properties.getProperty("version");
+        }
+    }
+
+    private static final class Result {
+
+        private final long wallTime;
+        private final long peakRss;
+        private final long outputSize;
+
+        private Result(final long wallTime, final long peakRss, final long outputSize) {
+            this.wallTime = wallTime;
+            this.peakRss = peakRss;
+            this.outputSize = outputSize;
+        }
+    }
+
+    /**
+     * Samples the peak resident set size the kernel reports for the processes
+     * whose command line contains a marker. Only supported on Linux, the peak
+     * RSS is {@code -1} elsewhere.
+     */
+    private static final class RssSampler implements AutoCloseable {
+
+        private static final File PROC = new File("/proc");
+
+        private final String marker;
+        private final AtomicLong peakRss = new AtomicLong(-1);
+        private final ScheduledExecutorService executor;
+
+        private RssSampler(final String marker) {
+            this.marker = marker;
+            //@formatter:off
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                                                                        .setNameFormat("fatjar-rss-sampler-%d")
+                                                                        .setDaemon(true)
+                                                                        .build());
+            //@formatter:on
+        }
+
+        private static RssSampler start(final String marker) {
+            final RssSampler sampler = new RssSampler(marker);
+            if (PROC.isDirectory()) {
+                sampler.executor.scheduleWithFixedDelay(sampler::sample, 0, RSS_SAMPLING_INTERVAL,
+                        TimeUnit.MILLISECONDS);
+            }
+            return sampler;
+        }
+
+        private void sample() {
+            final File[] processes = PROC.listFiles(f -> f.getName().chars().allMatch(Character::isDigit));
+            if (processes == null) {
+                return;
+            }
+            for (final File process : processes) {
+                try {
+                    final String commandLine = new String(Files.readAllBytes(new File(process, "cmdline").toPath()),
+                            UTF_8);
+                    if (!commandLine.contains(marker)) {
+                        continue;
+                    }
+                    // the high water mark covers the peaks between two samples
+                    for (final String line : Files.readAllLines(new File(process, "status").toPath(), UTF_8)) {
+                        if (line.startsWith("VmHWM:")) {
+                            final List<String> fields = Splitter.on(' ').omitEmptyStrings().splitToList(line);
+                            peakRss.accumulateAndGet(Long.parseLong(fields.get(1)) * 1024, Math::max);
+                        }
+                    }
+                } catch (final IOException | RuntimeException e) {
+                    // the process exited meanwhile
+                }
+            }
+        }
+
+        private long getPeakRss() {
+            return peakRss.get();
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin.benchmark;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amitinside.maven.fatjar.plugin.Bundle;
+import com.amitinside.maven.fatjar.plugin.Configurer;
+import com.amitinside.maven.fatjar.plugin.StartupOptimizer;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Measures the cold start of a JVM loading a part of the classes of a
+ * synthetic fat JAR, as built and after the startup optimization with and
+ * without AppCDS archive. The archive requires Java 11 or later.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class StartupBenchmark {
+
+    private static final String WORKLOAD = StartupWorkload.class.getName().replace('.', '/') + ".class";
+
+    @Param({ "original", "reordered", "archived" })
+    private String variant;
+
+    @Param({ "20" })
+    private int jarCount;
+
+    @Param({ "500" })
+    private int classesPerJar;
+
+    @Param({ "1024" })
+    private int classSize;
+
+    // every n-th class is loaded at startup
+    @Param({ "4" })
+    private int hotClassInterval;
+
+    private File workDirectory;
+    private List<String> command;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workDirectory = Files.createTempDirectory("fatjar-startup").toFile();
+        final List<File> jars = SyntheticInputs.generateJars(new File(workDirectory, "jars"), jarCount,
+                classesPerJar, classSize, 4);
+        final File bundle = new File(workDirectory, "bundle.jar");
+        final List<String> hotClasses = writeBundle(jars, bundle);
+        final File classList = new File(workDirectory, "hot.classlist");
+        Files.write(classList.toPath(), hotClasses, UTF_8);
+
+        command = Lists.newArrayList(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        if (!"original".equals(variant)) {
+            final Configurer configurer = BenchmarkConfigurations.newConfigurer(workDirectory, bundle);
+            configurer.put(STARTUP_CLASS_LIST, classList.getPath());
+            configurer.put(STARTUP_ARCHIVE, String.valueOf("archived".equals(variant)));
+            //@formatter:off
+            StartupOptimizer.newInstance(configurer)
+                            .optimize(Bundle.newInstance("bench.bundle", "1.0.0", bundle.getName(), null, null, null),
+                                      bundle,
+                                      workDirectory);
+            //@formatter:on
+        }
+        if ("archived".equals(variant)) {
+            command.add("-XX:SharedArchiveFile=" + bundle.getAbsolutePath() + ".jsa");
+        }
+        command.add("-cp");
+        command.add(bundle.getAbsolutePath());
+        command.add(StartupWorkload.class.getName());
+        command.add(classList.getAbsolutePath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Benchmark
+    public int launch() throws Exception {
+        final int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+        checkState(exitCode == 0, "Workload failed with exit code %s", exitCode);
+        return exitCode;
+    }
+
+    /**
+     * Merges the specified JARs into a bundle with the workload as main class
+     * and the entries sorted by name like written by the plugin
+     *
+     * @return the classes loaded by the workload in a random order
+     */
+    private List<String> writeBundle(final List<File> jars, final File bundle) throws Exception {
+        final SortedMap<String, byte[]> entries = Maps.newTreeMap();
+        for (final File jar : jars) {
+            try (JarFile in = new JarFile(jar)) {
+                for (final Enumeration<JarEntry> e = in.entries(); e.hasMoreElements();) {
+                    final ZipEntry entry = e.nextElement();
+                    try (InputStream content = in.getInputStream(entry)) {
+                        entries.put(entry.getName(), ByteStreams.toByteArray(content));
+                    }
+                }
+            }
+        }
+        try (InputStream workload = StartupWorkload.class.getClassLoader().getResourceAsStream(WORKLOAD)) {
+            entries.put(WORKLOAD, ByteStreams.toByteArray(workload));
+        }
+        final List<String> hotClasses = Lists.newArrayList();
+        int index = 0;
+        for (final String name : entries.keySet()) {
+            if (name.endsWith(".class") && !name.equals(WORKLOAD) && index++ % hotClassInterval == 0) {
+                hotClasses.add(name.substring(0, name.length() - ".class".length()));
+            }
+        }
+        // the load order is unrelated to the order of the entries
+        Collections.shuffle(hotClasses, new Random(42));
+        hotClasses.add(0, WORKLOAD.substring(0, WORKLOAD.length() - ".class".length()));
+
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, StartupWorkload.class.getName());
+        try (JarOutputStream out = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(bundle)),
+                manifest)) {
+            for (final Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        return hotClasses;
+    }
+
+}
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Main class of the bundles launched by the startup benchmark which loads the
+ * classes listed in the specified file. Only depends on the JDK as it is
+ * copied into the bundles on its own.
+ */
+public final class StartupWorkload {
+
+    private StartupWorkload() {
+        throw new IllegalAccessError("Cannot instantiate");
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final ClassLoader loader = StartupWorkload.class.getClassLoader();
+        for (final String name : Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            Class.forName(name.replace('/', '.'), false, loader);
+        }
+    }
+
+}
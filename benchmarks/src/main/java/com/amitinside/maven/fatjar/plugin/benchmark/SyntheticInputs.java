@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin.benchmark;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.*;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+
+/**
+ * Generates synthetic JARs, ZIP distributions with nested archives and deep
+ * directory trees as inputs for the benchmarks
+ */
+public final class SyntheticInputs {
+
+    private static final int CLASSES_PER_PACKAGE = 50;
+    private static final int CLASSES_PER_RESOURCE = 10;
+    private static final int JAVA_8_MAJOR_VERSION = 52;
+    private static final int ACC_PUBLIC_SUPER = 0x0021;
+
+    private SyntheticInputs() {
+        throw new IllegalAccessError("Cannot instantiate");
+    }
+
+    /**
+     * Generates JARs with valid class files referencing each other and
+     * resources in deep directory trees
+     *
+     * @param directory the directory to generate the JARs in
+     * @param jarCount the number of JARs
+     * @param classesPerJar the number of classes in every JAR
+     * @param classSize the approximate size of every class file in bytes
+     * @param directoryDepth the depth of the directory tree of the resources
+     * @return the generated JARs
+     * @throws IOException if a JAR cannot be written
+     */
+    public static List<File> generateJars(final File directory, final int jarCount, final int classesPerJar,
+            final int classSize, final int directoryDepth) throws IOException {
+        checkArgument(jarCount > 0, "Number of JARs must be positive");
+        checkArgument(classesPerJar > 0, "Number of classes must be positive");
+
+        FileUtils.forceMkdir(directory);
+        final List<File> jars = Lists.newArrayList();
+        for (int j = 0; j < jarCount; j++) {
+            final File jar = new File(directory, "synthetic-" + j + ".jar");
+            try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(jar)))) {
+                for (int c = 0; c < classesPerJar; c++) {
+                    final String name = className(j, c);
+                    // every class references the next one to give the analysis something to do
+                    final String referenced = className(j, (c + 1) % classesPerJar);
+                    putEntry(out, name + ".class", classFile(name, referenced, classSize));
+                    if (c % CLASSES_PER_RESOURCE == 0) {
+                        putEntry(out, resourceName(j, c, directoryDepth), name.getBytes(UTF_8));
+                    }
+                }
+            }
+            jars.add(jar);
+        }
+        return jars;
+    }
+
+    /**
+     * Generates ZIP distributions which contain the specified JARs in a
+     * {@code lib} directory and in a nested ZIP archive
+     *
+     * @param directory the directory to generate the distributions in
+     * @param jars the JARs to distribute
+     * @param distributionCount the number of distributions to spread the JARs
+     *            over
+     * @return the generated distributions
+     * @throws IOException if a distribution cannot be written
+     */
+    public static List<File> generateDistributions(final File directory, final List<File> jars,
+            final int distributionCount) throws IOException {
+        checkArgument(distributionCount > 0, "Number of distributions must be positive");
+
+        FileUtils.forceMkdir(directory);
+        final List<File> distributions = Lists.newArrayList();
+        for (int d = 0; d < distributionCount; d++) {
+            final List<File> plain = Lists.newArrayList();
+            final List<File> nested = Lists.newArrayList();
+            for (int j = d; j < jars.size(); j += distributionCount) {
+                (j % 2 == 0 ? plain : nested).add(jars.get(j));
+            }
+            final File distribution = new File(directory, "distribution-" + d + ".zip");
+            try (ZipOutputStream out = new ZipOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(distribution)))) {
+                for (final File jar : plain) {
+                    putEntry(out, "lib/" + jar.getName(), Files.readAllBytes(jar.toPath()));
+                }
+                putEntry(out, "nested/inner-" + d + ".zip", zip(nested));
+                putEntry(out, "docs/" + Strings.repeat("level/", 8) + "README.txt", "synthetic".getBytes(UTF_8));
+            }
+            distributions.add(distribution);
+        }
+        return distributions;
+    }
+
+    private static byte[] zip(final List<File> jars) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (final File jar : jars) {
+                putEntry(out, "lib/" + jar.getName(), Files.readAllBytes(jar.toPath()));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void putEntry(final ZipOutputStream out, final String name, final byte[] content)
+            throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content);
+        out.closeEntry();
+    }
+
+    private static String className(final int jar, final int clazz) {
+        return "synthetic/j" + jar + "/p" + clazz / CLASSES_PER_PACKAGE + "/Class" + clazz;
+    }
+
+    private static String resourceName(final int jar, final int clazz, final int depth) {
+        final StringBuilder name = new StringBuilder("synthetic/j" + jar + "/resources");
+        for (int i = 0; i < depth; i++) {
+            name.append("/d").append(i);
+        }
+        return name.append("/resource").append(clazz).append(".txt").toString();
+    }
+
+    /**
+     * Creates a minimal class file without members whose constant pool
+     * references another class and is padded to the specified size
+     */
+    private static byte[] classFile(final String name, final String referenced, final int size) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(size, 128));
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(JAVA_8_MAJOR_VERSION);
+        // constant pool count is the number of entries plus one
+        out.writeShort(8);
+        // #1 and #2
+        writeClassConstant(out, name, 1);
+        // #3 and #4
+        writeClassConstant(out, "java/lang/Object", 3);
+        // #5 and #6
+        writeClassConstant(out, referenced, 5);
+        // #7
+        final char[] padding = new char[Math.max(0, Math.min(size - 128, 65535))];
+        Arrays.fill(padding, 'x');
+        writeUtf8(out, new String(padding));
+        out.writeShort(ACC_PUBLIC_SUPER);
+        // this class, super class
+        out.writeShort(2);
+        out.writeShort(4);
+        // interfaces, fields, methods and attributes
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeClassConstant(final DataOutputStream out, final String name, final int utf8Index)
+            throws IOException {
+        writeUtf8(out, name);
+        out.writeByte(7);
+        out.writeShort(utf8Index);
+    }
+
+    private static void writeUtf8(final DataOutputStream out, final String value) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(value);
+    }
+
+}
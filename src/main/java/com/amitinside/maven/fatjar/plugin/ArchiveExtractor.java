@@ -0,0 +1,514 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
+import static com.google.common.base.Preconditions.*;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.stream.Collectors.toList;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.tukaani.xz.SeekableFileInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+import org.tukaani.xz.XZInputStream;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import net.lingala.zip4j.core.ZipFile;
+import net.lingala.zip4j.exception.ZipException;
+
+/**
+ * Extracts archives concurrently on a bounded worker pool. Every archive is
+ * extracted to its own subtree below the extraction directory and the first
+ * failure aborts all pending extractions. Tar archives are always streamed
+ * and decompressed ahead of the extraction, multi-block XZ files in parallel.
+ */
+public final class ArchiveExtractor {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int READ_AHEAD_CHUNKS = 4;
+    // larger XZ blocks are decompressed sequentially to bound the memory
+    private static final long MAX_PARALLEL_BLOCK_SIZE = 64L * 1024 * 1024;
+
+    public enum Mode {
+        /** unpacks the complete archive to disk */
+        FULL,
+        /** reads the archive once and writes only the included entries */
+        STREAMING;
+    }
+
+    private enum Format {
+        ZIP,
+        TAR,
+        TAR_GZ,
+        TAR_BZ2,
+        TAR_XZ;
+
+        private static Format of(final String name) {
+            final String lowerCase = name.toLowerCase(Locale.ENGLISH);
+            if (lowerCase.endsWith(".tar.gz") || lowerCase.endsWith(".tgz")) {
+                return TAR_GZ;
+            }
+            if (lowerCase.endsWith(".tar.bz2") || lowerCase.endsWith(".tbz2")) {
+                return TAR_BZ2;
+            }
+            if (lowerCase.endsWith(".tar.xz") || lowerCase.endsWith(".txz")) {
+                return TAR_XZ;
+            }
+            return lowerCase.endsWith(".tar") ? TAR : ZIP;
+        }
+    }
+
+    private final int threads;
+    private final Mode mode;
+    private final List<PathMatcher> includes;
+    private final String[] extensionsToUnarchive;
+    private final int nestedArchiveDepth;
+    private final ExtractionCache cache;
+    private final Map<File, String> origins = Maps.newConcurrentMap();
+
+    private ArchiveExtractor(final Configurer configurer) {
+        final int configuredThreads = Integer.parseInt(configurer.getAsString(EXTRACTION_THREADS));
+        mode = Mode.valueOf(configurer.getAsString(EXTRACTION_MODE).toUpperCase(Locale.ENGLISH));
+        nestedArchiveDepth = Integer.parseInt(configurer.getAsString(NESTED_ARCHIVE_DEPTH));
+        extensionsToUnarchive = (String[]) configurer.get(EXTENSION_TO_UNARCHIVE);
+        //@formatter:off
+        includes = Arrays.stream((String[]) configurer.get(EXTRACTION_INCLUDES))
+                         .map(p -> FileSystems.getDefault().getPathMatcher("glob:" + p))
+                         .collect(toList());
+        //@formatter:on
+
+        checkArgument(configuredThreads >= 0, "Number of extraction threads cannot be negative");
+        checkArgument(nestedArchiveDepth >= 0, "Nested archive depth cannot be negative");
+        threads = configuredThreads == 0 ? Runtime.getRuntime().availableProcessors() : configuredThreads;
+
+        if (Boolean.valueOf(configurer.getAsString(USE_EXTRACTION_CACHE))) {
+            final File cacheDirectory = new File(configurer.getAsString(EXTRACTION_CACHE_DIRECTORY));
+            final long cacheSize = Long.parseLong(configurer.getAsString(EXTRACTION_CACHE_SIZE));
+            //@formatter:off
+            final String settings = Joiner.on(',').join(mode,
+                                                        nestedArchiveDepth,
+                                                        Joiner.on(',').join(extensionsToUnarchive),
+                                                        Joiner.on(',').join((String[]) configurer.get(EXTRACTION_INCLUDES)));
+            //@formatter:on
+            cache = ExtractionCache.newInstance(cacheDirectory, cacheSize * 1024 * 1024, settings);
+        } else {
+            cache = null;
+        }
+    }
+
+    public static ArchiveExtractor newInstance(final Configurer configurer) {
+        return new ArchiveExtractor(configurer);
+    }
+
+    /**
+     * Extracts the specified archives
+     *
+     * @param archives the archives to extract
+     * @param extractionDirectory the directory to extract to
+     * @return the extracted files matching the configured include patterns
+     * @throws IOException if any of the archives cannot be extracted
+     */
+    public List<File> extract(final List<File> archives, final File extractionDirectory) throws IOException {
+        checkNotNull(archives, "Archives cannot be null");
+        final List<File> extracted = Lists.newArrayList();
+        if (archives.isEmpty()) {
+            return extracted;
+        }
+        final int poolSize = Math.min(threads, archives.size());
+        //@formatter:off
+        final ExecutorService executor = Executors.newFixedThreadPool(poolSize,
+                                                new ThreadFactoryBuilder()
+                                                        .setNameFormat("fatjar-extractor-%d")
+                                                        .setDaemon(true)
+                                                        .build());
+        //@formatter:on
+        final CompletionService<List<File>> completionService = new ExecutorCompletionService<>(executor);
+        final List<Future<List<File>>> futures = Lists.newArrayList();
+        final List<Throwable> failures = Lists.newArrayList();
+        try {
+            for (int i = 0; i < archives.size(); i++) {
+                final File archive = archives.get(i);
+                final File destination = destination(extractionDirectory, i, archive);
+                // the remaining threads decompress multi-block XZ archives, gzip
+                // and bzip2 archives are decompressed on a single read-ahead thread
+                final int decompressionThreads = Math.max(1, threads / poolSize);
+                futures.add(completionService.submit(() -> extract(archive, destination, decompressionThreads)));
+            }
+            for (int i = 0; i < futures.size() && failures.isEmpty(); i++) {
+                try {
+                    extracted.addAll(completionService.take().get());
+                } catch (final ExecutionException e) {
+                    failures.add(e.getCause());
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failures.add(e);
+        } finally {
+            executor.shutdownNow();
+            // the extractions still running must not write into a directory being deleted
+            awaitTermination(executor);
+        }
+        if (failures.isEmpty()) {
+            if (cache != null) {
+                cache.evict();
+            }
+            return extracted;
+        }
+        // collect failures of archives that were completed concurrently
+        for (final Future<List<File>> future : futures) {
+            if (future.isDone() && !future.isCancelled()) {
+                try {
+                    future.get();
+                } catch (final ExecutionException e) {
+                    if (!failures.contains(e.getCause())) {
+                        failures.add(e.getCause());
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        final StringBuilder message = new StringBuilder("Archive extraction failed: ");
+        for (final Throwable failure : failures) {
+            message.append(System.lineSeparator());
+            message.append(failure.getMessage());
+        }
+        final IOException exception = new IOException(message.toString(), failures.get(0));
+        failures.stream().skip(1).forEach(exception::addSuppressed);
+        throw exception;
+    }
+
+    /**
+     * Extracts a single archive on the calling thread. Unlike
+     * {@link #extract(List, File)}, the cache is not evicted afterwards, so
+     * {@link #evictCache()} has to be called once all archives are extracted.
+     *
+     * @param archive the archive to extract
+     * @param index the index of the archive which is unique among all
+     *            archives extracted to the same directory
+     * @param extractionDirectory the directory to extract to
+     * @param decompressionThreads the number of threads decompressing a
+     *            multi-block XZ archive ahead of its extraction, the share of
+     *            the caller's threads not busy with other archives. Gzip and
+     *            bzip2 archives are always decompressed on a single read-ahead
+     *            thread.
+     * @return the extracted files matching the configured include patterns
+     * @throws IOException if the archive cannot be extracted
+     */
+    public List<File> extract(final File archive, final int index, final File extractionDirectory,
+            final int decompressionThreads) throws IOException {
+        checkNotNull(archive, "Archive cannot be null");
+        checkArgument(decompressionThreads > 0, "Number of decompression threads must be positive");
+        return extract(archive, destination(extractionDirectory, index, archive), decompressionThreads);
+    }
+
+    /**
+     * Evicts the least recently used archives from the cache if it exceeds
+     * its size
+     *
+     * @throws IOException if an archive cannot be evicted
+     */
+    public void evictCache() throws IOException {
+        if (cache != null) {
+            cache.evict();
+        }
+    }
+
+    /**
+     * @return the extracted files mapped to their location in the extracted
+     *         archives, e.g. {@code dist.zip!/nested/inner.zip!/lib/a.jar}
+     */
+    public Map<File, String> getOrigins() {
+        return Collections.unmodifiableMap(origins);
+    }
+
+    private static File destination(final File extractionDirectory, final int index, final File archive) {
+        // archives of different groups can share the same name
+        return new File(extractionDirectory, index + "-" + archive.getName());
+    }
+
+    private List<File> extract(final File archive, final File destination, final int decompressionThreads)
+            throws IOException {
+        if (cache == null) {
+            return recordOrigins(archive, destination, extractTo(archive, destination, decompressionThreads));
+        }
+        final String key = cache.key(archive);
+        final List<File> cached = cache.get(key);
+        if (cached != null) {
+            return recordOrigins(archive, cache.getDirectory(key), cached);
+        }
+        final File staging = cache.newStagingDirectory();
+        try {
+            final List<File> extracted = cache.put(key, staging, extractTo(archive, staging, decompressionThreads));
+            return recordOrigins(archive, cache.getDirectory(key), extracted);
+        } finally {
+            FileUtils.deleteQuietly(staging);
+        }
+    }
+
+    private List<File> recordOrigins(final File archive, final File root, final List<File> extracted) {
+        final Path rootPath = root.toPath();
+        for (final File file : extracted) {
+            final StringBuilder origin = new StringBuilder(archive.getName());
+            String separator = "!/";
+            for (final Path segment : rootPath.relativize(file.toPath())) {
+                origin.append(separator).append(segment);
+                // nested archives are extracted to directories named like them
+                separator = isArchive(segment.toString()) ? "!/" : "/";
+            }
+            origins.put(file, origin.toString());
+        }
+        return extracted;
+    }
+
+    private List<File> extractTo(final File archive, final File destination, final int decompressionThreads)
+            throws IOException {
+        final Format format = Format.of(archive.getName());
+        // the decompressed tar is never written to disk
+        if (mode == Mode.STREAMING || format != Format.ZIP) {
+            final List<File> extracted = Lists.newArrayList();
+            try (InputStream in = open(archive, format, decompressionThreads);
+                    ArchiveInputStream archiveIn = newArchiveInputStream(in, format)) {
+                extract(archiveIn, destination, "", 0, extracted);
+            } catch (final IOException e) {
+                // truncated archives fail without a message
+                throw new IOException(archive.getName() + ": " + (e.getMessage() == null ? e : e.getMessage()), e);
+            }
+            return extracted;
+        }
+        try {
+            final ZipFile zipFile = new ZipFile(archive);
+            zipFile.extractAll(destination.getPath());
+        } catch (final ZipException e) {
+            throw new IOException(archive.getName() + ": " + e.getMessage(), e);
+        }
+        try (Stream<Path> paths = Files.walk(destination.toPath())) {
+            //@formatter:off
+            return paths.filter(Files::isRegularFile)
+                        .filter(p -> isIncluded(destination.toPath().relativize(p).toString()))
+                        .map(Path::toFile)
+                        .collect(toList());
+            //@formatter:on
+        }
+    }
+
+    private void extract(final ArchiveInputStream in, final File destination, final String prefix,
+            final int depth, final List<File> extracted) throws IOException {
+        ArchiveEntry entry;
+        while ((entry = in.getNextEntry()) != null) {
+            if (entry.isDirectory() || !hasContent(entry)) {
+                continue;
+            }
+            final String name = prefix + entry.getName();
+            if (isIncluded(name)) {
+                final Path file = resolve(destination, name);
+                Files.createDirectories(file.getParent());
+                Files.copy(in, file, REPLACE_EXISTING);
+                extracted.add(file.toFile());
+            } else if (depth < nestedArchiveDepth && isArchive(name)) {
+                // closing the nested streams releases their inflaters, the shield keeps the enclosing one open
+                final Format format = Format.of(name);
+                final InputStream shielded = new CloseShieldInputStream(in);
+                try (ArchiveInputStream nested = newArchiveInputStream(decompress(shielded, format), format)) {
+                    extract(nested, destination, name + '/', depth + 1, extracted);
+                }
+            }
+        }
+    }
+
+    private static boolean hasContent(final ArchiveEntry entry) {
+        if (!(entry instanceof TarArchiveEntry)) {
+            return true;
+        }
+        // links and devices of tar archives have no content
+        final TarArchiveEntry tarEntry = (TarArchiveEntry) entry;
+        //@formatter:off
+        return !tarEntry.isSymbolicLink()
+                && !tarEntry.isLink()
+                && !tarEntry.isCharacterDevice()
+                && !tarEntry.isBlockDevice()
+                && !tarEntry.isFIFO();
+        //@formatter:on
+    }
+
+    private static ArchiveInputStream newArchiveInputStream(final InputStream in, final Format format) {
+        if (format == Format.ZIP) {
+            return new ZipArchiveInputStream(in, "UTF-8", true, true);
+        }
+        return new TarArchiveInputStream(in);
+    }
+
+    private static InputStream decompress(final InputStream in, final Format format) throws IOException {
+        switch (format) {
+            case TAR_GZ:
+                return new GzipCompressorInputStream(in, true);
+            case TAR_BZ2:
+                return new BZip2CompressorInputStream(in, true);
+            case TAR_XZ:
+                return new XZInputStream(in);
+            default:
+                return in;
+        }
+    }
+
+    /**
+     * Opens the specified archive and decompresses it ahead of the reader
+     */
+    private static InputStream open(final File archive, final Format format, final int decompressionThreads)
+            throws IOException {
+        if (format == Format.TAR_XZ && decompressionThreads > 1) {
+            try (SeekableXZInputStream xz = new SeekableXZInputStream(new SeekableFileInputStream(archive))) {
+                final boolean bounded = IntStream.range(0, xz.getBlockCount())
+                        .allMatch(b -> xz.getBlockSize(b) <= MAX_PARALLEL_BLOCK_SIZE);
+                if (xz.getBlockCount() > 1 && bounded) {
+                    return decompressBlocks(archive, xz.getBlockCount(), decompressionThreads);
+                }
+            }
+        }
+        final InputStream in = new BufferedInputStream(new FileInputStream(archive));
+        if (format == Format.ZIP || format == Format.TAR) {
+            return in;
+        }
+        // gzip and bzip2 streams cannot be split without an index
+        final InputStream decompressed;
+        try {
+            decompressed = decompress(in, format);
+        } catch (final IOException e) {
+            in.close();
+            throw e;
+        }
+        final ExecutorService executor = newDecompressorPool(1);
+        final Iterator<Callable<byte[]>> producers = Iterators.cycle(() -> {
+            final byte[] chunk = new byte[CHUNK_SIZE];
+            final int length = ByteStreams.read(decompressed, chunk, 0, chunk.length);
+            return length == 0 ? null : length == chunk.length ? chunk : Arrays.copyOf(chunk, length);
+        });
+        return new OrderedChunkInputStream(producers, executor, READ_AHEAD_CHUNKS, () -> {
+            executor.shutdownNow();
+            decompressed.close();
+        });
+    }
+
+    private static InputStream decompressBlocks(final File archive, final int blocks, final int threads) {
+        final ExecutorService executor = newDecompressorPool(threads);
+        //@formatter:off
+        final Iterator<Callable<byte[]>> producers = IntStream.range(0, blocks)
+                                                              .mapToObj(b -> (Callable<byte[]>) () -> decompressBlock(archive, b))
+                                                              .iterator();
+        //@formatter:on
+        return new OrderedChunkInputStream(producers, executor, threads, executor::shutdownNow);
+    }
+
+    private static byte[] decompressBlock(final File archive, final int block) throws IOException {
+        try (SeekableXZInputStream xz = new SeekableXZInputStream(new SeekableFileInputStream(archive))) {
+            xz.seekToBlock(block);
+            final byte[] data = new byte[(int) xz.getBlockSize(block)];
+            ByteStreams.readFully(xz, data);
+            return data;
+        }
+    }
+
+    private static ExecutorService newDecompressorPool(final int threads) {
+        //@formatter:off
+        return Executors.newFixedThreadPool(threads,
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("fatjar-decompressor-%d")
+                            .setDaemon(true)
+                            .build());
+        //@formatter:on
+    }
+
+    private boolean isIncluded(final String name) {
+        final Path path = Paths.get("/" + name);
+        return includes.stream().anyMatch(m -> m.matches(path));
+    }
+
+    private boolean isArchive(final String name) {
+        return isArchive(name, extensionsToUnarchive);
+    }
+
+    /**
+     * Checks whether the specified file name ends with any of the specified
+     * archive extensions, ignoring the case
+     *
+     * @param name the file name
+     * @param extensionsToUnarchive the archive extensions without leading dot
+     * @return {@code true} if the file is an archive to extract, otherwise
+     *         {@code false}
+     */
+    public static boolean isArchive(final String name, final String[] extensionsToUnarchive) {
+        final String lowerCase = name.toLowerCase(Locale.ENGLISH);
+        //@formatter:off
+        return Arrays.stream(extensionsToUnarchive)
+                     .anyMatch(e -> lowerCase.endsWith("." + e.toLowerCase(Locale.ENGLISH)));
+        //@formatter:on
+    }
+
+    private static void awaitTermination(final ExecutorService executor) {
+        try {
+            // workers not responding to the interruption finish their current entry
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Path resolve(final File destination, final String name) throws IOException {
+        final Path root = destination.toPath().normalize();
+        final Path file = root.resolve(name).normalize();
+        if (!file.startsWith(root)) {
+            throw new IOException("Entry is outside of the target directory: " + name);
+        }
+        return file;
+    }
+
+}
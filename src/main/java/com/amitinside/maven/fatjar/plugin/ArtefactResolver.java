@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ObjIntConsumer;
+
+import org.apache.maven.model.Dependency;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.ArtifactType;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Resolves the declared dependencies of a POM in-process using the repository
+ * system of the running Maven session
+ */
+public final class ArtefactResolver {
+
+    private final RepositorySystem repositorySystem;
+    private final RepositorySystemSession session;
+    private final List<RemoteRepository> remoteRepositories;
+    private final int threads;
+
+    private ArtefactResolver(final RepositorySystem repositorySystem, final RepositorySystemSession session,
+            final List<RemoteRepository> remoteRepositories, final int threads) {
+        checkNotNull(repositorySystem, "Repository System cannot be null");
+        checkNotNull(session, "Repository System Session cannot be null");
+        checkNotNull(remoteRepositories, "Remote Repositories cannot be null");
+        checkArgument(threads >= 0, "Number of resolution threads cannot be negative");
+
+        this.repositorySystem = repositorySystem;
+        this.session = session;
+        this.remoteRepositories = remoteRepositories;
+        this.threads = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    /**
+     * Creates a new resolver
+     *
+     * @param repositorySystem the repository system
+     * @param session the repository system session
+     * @param remoteRepositories the remote repositories to resolve from
+     * @param threads the maximum number of artefacts to resolve concurrently
+     *            or {@code 0} to use the number of available processors
+     * @return the resolver instance
+     */
+    public static ArtefactResolver newInstance(final RepositorySystem repositorySystem,
+            final RepositorySystemSession session, final List<RemoteRepository> remoteRepositories,
+            final int threads) {
+        return new ArtefactResolver(repositorySystem, session, remoteRepositories, threads);
+    }
+
+    /**
+     * Resolves the specified dependencies concurrently
+     *
+     * @param dependencies the dependencies with their versions to resolve
+     * @return the resolved artefacts in the order of the dependencies
+     * @throws IOException if any of the dependencies cannot be resolved
+     */
+    public List<Artifact> resolve(final List<Dependency> dependencies) throws IOException {
+        final Artifact[] resolved = new Artifact[dependencies.size()];
+        resolve(dependencies, (artifact, index) -> resolved[index] = artifact);
+        return Lists.newArrayList(resolved);
+    }
+
+    /**
+     * Resolves the specified dependencies concurrently and passes every
+     * artefact to the consumer as soon as it is resolved. The consumer is
+     * called by the resolution threads, so a blocking consumer slows the
+     * resolution down.
+     *
+     * @param dependencies the dependencies with their versions to resolve
+     * @param consumer the consumer of the resolved artefacts and the index of
+     *            their dependency
+     * @throws IOException if any of the dependencies cannot be resolved or
+     *             the consumer fails
+     */
+    public void resolve(final List<Dependency> dependencies, final ObjIntConsumer<Artifact> consumer)
+            throws IOException {
+        checkNotNull(dependencies, "Dependencies cannot be null");
+        checkNotNull(consumer, "Consumer cannot be null");
+
+        if (dependencies.isEmpty()) {
+            return;
+        }
+        //@formatter:off
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, dependencies.size()),
+                                                new ThreadFactoryBuilder()
+                                                        .setNameFormat("fatjar-resolver-%d")
+                                                        .setDaemon(true)
+                                                        .build());
+        //@formatter:on
+        try {
+            final List<Future<Void>> futures = Lists.newArrayList();
+            for (int i = 0; i < dependencies.size(); i++) {
+                final int index = i;
+                final ArtifactRequest request = new ArtifactRequest(toArtifact(dependencies.get(i)),
+                        remoteRepositories, null);
+                futures.add(executor.submit(() -> {
+                    consumer.accept(repositorySystem.resolveArtifact(session, request).getArtifact(), index);
+                    return null;
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (final ExecutionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Artefact resolution has been interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the location of the specified dependency in the local repository
+     * without resolving it
+     *
+     * @param dependency the dependency with its version
+     * @return the location in the local repository which might not exist
+     */
+    public File getLocalFile(final Dependency dependency) {
+        final String path = session.getLocalRepositoryManager().getPathForLocalArtifact(toArtifact(dependency));
+        return new File(session.getLocalRepository().getBasedir(), path);
+    }
+
+    private Artifact toArtifact(final Dependency dependency) {
+        final ArtifactType type = session.getArtifactTypeRegistry().get(dependency.getType());
+        String classifier = dependency.getClassifier();
+        String extension = dependency.getType();
+        if (type != null) {
+            extension = type.getExtension();
+            if (classifier == null || classifier.isEmpty()) {
+                classifier = type.getClassifier();
+            }
+        }
+        //@formatter:off
+        return new DefaultArtifact(dependency.getGroupId(),
+                                   dependency.getArtifactId(),
+                                   classifier,
+                                   extension,
+                                   dependency.getVersion());
+        //@formatter:on
+    }
+
+}
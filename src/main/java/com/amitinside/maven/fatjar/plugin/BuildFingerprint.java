@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.*;
+import static java.io.File.separator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Dependency;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Fingerprint of all inputs of a fat JAR build which is stored next to the
+ * generated JAR to detect whether a subsequent build can be skipped. The
+ * version overrides the JAR has been built from and the time the versions have
+ * been updated are stored along with it, so a subsequent build can be skipped
+ * without updating the versions again as long as they are recent enough.
+ */
+public final class BuildFingerprint {
+
+    private static final String FINGERPRINT_EXTENSION = ".fingerprint";
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String VERSIONS_UPDATED = "versionsUpdated";
+    private static final String OVERRIDE_PREFIX = "override.";
+
+    private final String pomLocation;
+    private final String[] extensionsToUnarchive;
+    private final List<Bundle> bundles;
+    private final List<File> targetFiles = Lists.newArrayList();
+    private final List<File> fingerprintFiles = Lists.newArrayList();
+    private final ArtefactResolver resolver;
+    private final Configurer configurer;
+    private final Properties versionOverrides;
+    private final long versionsUpdated;
+
+    @SuppressWarnings("unchecked")
+    private BuildFingerprint(final Configurer configurer, final ArtefactResolver resolver,
+            final Properties versionOverrides, final long versionsUpdated) {
+        pomLocation = configurer.getAsString(POM_LOCATION);
+        extensionsToUnarchive = (String[]) configurer.get(EXTENSION_TO_UNARCHIVE);
+        bundles = (List<Bundle>) configurer.get(BUNDLES);
+        final String targetLocation = configurer.getAsString(TARGET_DIRECTORY);
+        for (final Bundle bundle : bundles) {
+            final String fileName = bundle.getTargetFilename();
+            targetFiles.add(new File(targetLocation + separator + fileName));
+            fingerprintFiles.add(new File(targetLocation + separator + fileName + FINGERPRINT_EXTENSION));
+        }
+        this.resolver = resolver;
+        this.configurer = configurer;
+        this.versionOverrides = versionOverrides;
+        this.versionsUpdated = versionsUpdated;
+
+        checkArgument(!pomLocation.trim().isEmpty(), "POM Location cannot be empty");
+        checkNotNull(resolver, "Artefact Resolver cannot be null");
+        checkNotNull(versionOverrides, "Version Overrides cannot be null");
+    }
+
+    /**
+     * Creates a new fingerprint of versions which have just been updated
+     *
+     * @param configurer the configuration of the current execution
+     * @param resolver the resolver to locate the dependencies with
+     * @param versionOverrides the version properties overriding the ones
+     *            declared in the POM, i.e. the versions the fat JARs are built
+     *            from
+     * @return the fingerprint instance
+     */
+    public static BuildFingerprint newInstance(final Configurer configurer, final ArtefactResolver resolver,
+            final Properties versionOverrides) {
+        return new BuildFingerprint(configurer, resolver, versionOverrides, System.currentTimeMillis());
+    }
+
+    /**
+     * Creates the fingerprint of the versions the previous build has been
+     * built from, which can be checked without updating the versions
+     *
+     * @param configurer the configuration of the current execution
+     * @param resolver the resolver to locate the dependencies with
+     * @param versionsTtl the time in milliseconds after which the versions
+     *            have to be updated again if the versions are to be updated
+     * @return the fingerprint instance or {@code null} if there is no previous
+     *         build or its versions have to be updated again
+     * @throws IOException if the stored fingerprint cannot be read
+     */
+    @SuppressWarnings("unchecked")
+    public static BuildFingerprint ofPreviousBuild(final Configurer configurer, final ArtefactResolver resolver,
+            final long versionsTtl) throws IOException {
+        checkArgument(versionsTtl >= 0, "Time to live of the versions cannot be negative");
+
+        final List<Bundle> bundles = (List<Bundle>) configurer.get(BUNDLES);
+        final File fingerprintFile = new File(configurer.getAsString(TARGET_DIRECTORY) + separator
+                + bundles.get(0).getTargetFilename() + FINGERPRINT_EXTENSION);
+        final Properties stored = load(fingerprintFile);
+        final String updated = stored.getProperty(VERSIONS_UPDATED);
+        if (updated == null) {
+            return null;
+        }
+        final long versionsUpdated = Long.parseLong(updated);
+        final boolean updateVersions = Boolean.valueOf(configurer.getAsString(UPDATE_VERSION));
+        if (updateVersions && System.currentTimeMillis() - versionsUpdated >= versionsTtl) {
+            return null;
+        }
+        final Properties versionOverrides = new Properties();
+        for (final String name : stored.stringPropertyNames()) {
+            if (name.startsWith(OVERRIDE_PREFIX)) {
+                versionOverrides.setProperty(name.substring(OVERRIDE_PREFIX.length()), stored.getProperty(name));
+            }
+        }
+        return new BuildFingerprint(configurer, resolver, versionOverrides, versionsUpdated);
+    }
+
+    /**
+     * Checks whether the previously generated fat JARs have been built from
+     * the very same inputs
+     *
+     * @return {@code true} if all target JARs exist and the stored fingerprints
+     *         match the current inputs, otherwise {@code false}
+     * @throws IOException if the inputs cannot be read
+     * @throws XmlPullParserException if the POM cannot be parsed
+     */
+    public boolean isUpToDate() throws IOException, XmlPullParserException {
+        if (!targetFiles.stream().allMatch(File::isFile) || !fingerprintFiles.stream().allMatch(File::isFile)) {
+            return false;
+        }
+        final String current = compute();
+        if (current == null) {
+            return false;
+        }
+        for (final File fingerprintFile : fingerprintFiles) {
+            if (!current.equals(load(fingerprintFile).getProperty(FINGERPRINT))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores the fingerprint next to every target JAR together with the
+     * version overrides and the time the versions have been updated
+     *
+     * @throws IOException if the inputs cannot be read or the fingerprint
+     *             cannot be written
+     * @throws XmlPullParserException if the POM cannot be parsed
+     */
+    public void store() throws IOException, XmlPullParserException {
+        final String current = compute();
+        final Properties fingerprint = new Properties();
+        if (current != null) {
+            fingerprint.setProperty(FINGERPRINT, current);
+            fingerprint.setProperty(VERSIONS_UPDATED, Long.toString(versionsUpdated));
+            for (final String name : versionOverrides.stringPropertyNames()) {
+                fingerprint.setProperty(OVERRIDE_PREFIX + name, versionOverrides.getProperty(name));
+            }
+        }
+        for (final File fingerprintFile : fingerprintFiles) {
+            if (current == null) {
+                FileUtils.deleteQuietly(fingerprintFile);
+            } else {
+                try (Writer writer = Files.asCharSink(fingerprintFile, UTF_8).openBufferedStream()) {
+                    fingerprint.store(writer, null);
+                }
+            }
+        }
+    }
+
+    private static Properties load(final File fingerprintFile) throws IOException {
+        final Properties fingerprint = new Properties();
+        if (fingerprintFile.isFile()) {
+            try (Reader reader = Files.asCharSource(fingerprintFile, UTF_8).openBufferedStream()) {
+                fingerprint.load(reader);
+            }
+        }
+        return fingerprint;
+    }
+
+    private String compute() throws IOException, XmlPullParserException {
+        final List<Dependency> dependencies = DependencyCollector.newInstance(configurer, versionOverrides).collect();
+        final StringBuilder inputs = new StringBuilder();
+        append(inputs, "plugin", configurer.getAsString(PLUGIN_VERSION));
+        for (final Bundle bundle : bundles) {
+            append(inputs, "bundle", bundle.toString());
+        }
+        append(inputs, "resolvable", configurer.getAsString(BUNDLE_RESOLVABLE));
+        append(inputs, "update", configurer.getAsString(UPDATE_VERSION));
+        append(inputs, "updater", configurer.getAsString(VERSIONS_UPDATER));
+        append(inputs, "overrides", new TreeMap<>(versionOverrides).toString());
+        append(inputs, "target", configurer.getAsString(TARGET_DIRECTORY));
+        append(inputs, "reproducible", configurer.getAsString(REPRODUCIBLE_OUTPUT));
+        append(inputs, "compression", configurer.getAsString(COMPRESSION_LEVEL));
+        append(inputs, "store", configurer.getAsString(STORE_COMPRESSED_ENTRIES));
+        append(inputs, "incremental", configurer.getAsString(INCREMENTAL));
+        append(inputs, "lowMemory", configurer.getAsString(LOW_MEMORY));
+        append(inputs, "minimize", configurer.getAsString(MINIMIZE));
+        append(inputs, "roots", join((String[]) configurer.get(MINIMIZATION_ROOTS)));
+        append(inputs, "keeps", join((String[]) configurer.get(MINIMIZATION_KEEPS)));
+        append(inputs, "analysis", configurer.getAsString(USE_ANALYSIS_INDEX));
+        append(inputs, "conflicts", configurer.getAsString(FAIL_ON_CLASS_CONFLICTS));
+        append(inputs, "embed", configurer.getAsString(EMBED_DEPENDENCIES));
+        final String startupClassList = configurer.getAsString(STARTUP_CLASS_LIST);
+        if (!startupClassList.isEmpty() && !new File(startupClassList).isFile()) {
+            // the build fails without it, therefore nothing to compare with
+            return null;
+        }
+        append(inputs, "startup", startupClassList.isEmpty() ? "" : hash(new File(startupClassList)));
+        append(inputs, "training", configurer.getAsString(STARTUP_TRAINING) + ' '
+                + join((String[]) configurer.get(STARTUP_TRAINING_ARGUMENTS)));
+        append(inputs, "archive", configurer.getAsString(STARTUP_ARCHIVE));
+        append(inputs, "composition", configurer.getAsString(WRITE_COMPOSITION_REPORT));
+        //@formatter:off
+        append(inputs, "budgets", configurer.getAsString(BUNDLE_SIZE_BUDGET) + ' '
+                                  + configurer.getAsString(BUNDLE_ENTRY_BUDGET) + ' '
+                                  + configurer.getAsString(DEPENDENCY_SIZE_BUDGET));
+        //@formatter:on
+        append(inputs, "extensions", Joiner.on(',').join(extensionsToUnarchive));
+        append(inputs, "includes", Joiner.on(',').join((String[]) configurer.get(EXTRACTION_INCLUDES)));
+        append(inputs, "extraction", configurer.getAsString(EXTRACTION_MODE));
+        append(inputs, "depth", configurer.getAsString(NESTED_ARCHIVE_DEPTH));
+        // the pipeline orders the classpath by declaration
+        append(inputs, "pipelined", configurer.getAsString(PIPELINED));
+        append(inputs, "staging", configurer.getAsString(STAGING_MODE));
+        append(inputs, "pom", hash(new File(pomLocation)));
+
+        for (final Dependency dep : dependencies) {
+            final File dependency = resolver.getLocalFile(dep);
+            if (!dependency.isFile()) {
+                // not yet available locally, therefore nothing to compare with
+                return null;
+            }
+            append(inputs, dep.getManagementKey() + ':' + dep.getVersion(), hash(dependency));
+        }
+        return Hashing.sha256().hashString(inputs, UTF_8).toString();
+    }
+
+    private static void append(final StringBuilder builder, final String key, final String value) {
+        builder.append(key);
+        builder.append('=');
+        builder.append(value);
+        builder.append(System.lineSeparator());
+    }
+
+    private static String join(final String[] values) {
+        return values == null ? "" : Joiner.on(',').join(values);
+    }
+
+    private static String hash(final File file) throws IOException {
+        return Files.asByteSource(file).hash(Hashing.sha256()).toString();
+    }
+
+}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.BUILD_METRICS;
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Records the wall time, I/O volume and file and entry counts of the
+ * individual phases of a build. CPU time and heap usage cannot be attributed
+ * to a phase, as phases run concurrently, such as the ones of different
+ * bundles, as well as other builds in the same JVM, e.g. with {@code mvn -T}.
+ * They are therefore reported once for the whole build: the CPU time consumed
+ * by the process during the build and the JVM-wide peak heap usage since the
+ * start of the JVM.
+ */
+public final class BuildMetrics {
+
+    private final long startTime = System.currentTimeMillis();
+    private final long startHeap = usedHeap();
+    private final long startCpu = processCpuTime();
+    private final List<Phase> phases = Collections.synchronizedList(Lists.newArrayList());
+    private final FlightRecorderEvents events;
+
+    private BuildMetrics(final boolean flightRecorderEvents) {
+        events = flightRecorderEvents ? FlightRecorderEvents.newInstance() : null;
+    }
+
+    /**
+     * Creates new metrics
+     *
+     * @param flightRecorderEvents {@code true} to additionally emit every
+     *            phase as Java Flight Recorder event if supported by the
+     *            running JVM
+     * @return the metrics instance
+     */
+    public static BuildMetrics newInstance(final boolean flightRecorderEvents) {
+        return new BuildMetrics(flightRecorderEvents);
+    }
+
+    /**
+     * Returns the metrics of the current execution or new metrics which are
+     * not reported if none have been configured
+     *
+     * @param configurer the configuration of the current execution
+     * @return the metrics instance
+     */
+    public static BuildMetrics of(final Configurer configurer) {
+        final BuildMetrics metrics = (BuildMetrics) configurer.get(BUILD_METRICS);
+        return metrics == null ? newInstance(false) : metrics;
+    }
+
+    /**
+     * @return {@code true} if Java Flight Recorder events can be emitted in
+     *         the running JVM
+     */
+    public boolean isFlightRecorderAvailable() {
+        return events != null && events.isAvailable();
+    }
+
+    /**
+     * Starts measuring a phase which ends when the returned phase is closed
+     *
+     * @param name the name of the phase
+     * @return the started phase
+     */
+    public Phase start(final String name) {
+        return start(name, null);
+    }
+
+    /**
+     * Starts measuring a phase which ends when the returned phase is closed
+     *
+     * @param name the name of the phase
+     * @param subject the bundle symbolic name the phase is executed for or
+     *            {@code null} if executed for all bundles
+     * @return the started phase
+     */
+    public Phase start(final String name, final String subject) {
+        checkNotNull(name, "Phase name cannot be null");
+        return new Phase(name, subject);
+    }
+
+    /**
+     * Writes the recorded phases as JSON
+     *
+     * @param report the file to write to
+     * @throws IOException if the file cannot be written
+     */
+    public void writeReport(final File report) throws IOException {
+        checkNotNull(report, "Report cannot be null");
+
+        final StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"startTime\": ").append(startTime).append(",\n");
+        json.append("  \"wallTimeMillis\": ").append(System.currentTimeMillis() - startTime).append(",\n");
+        json.append("  \"startHeapBytes\": ").append(startHeap).append(",\n");
+        json.append("  \"jvmPeakHeapBytes\": ").append(jvmPeakHeap()).append(",\n");
+        final long endCpu = processCpuTime();
+        json.append("  \"processCpuTimeNanos\": ").append(startCpu < 0 || endCpu < 0 ? -1 : endCpu - startCpu)
+                .append(",\n");
+        json.append("  \"availableProcessors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+        json.append("  \"phases\": [");
+        synchronized (phases) {
+            for (int i = 0; i < phases.size(); i++) {
+                json.append(i == 0 ? "\n" : ",\n");
+                phases.get(i).appendTo(json);
+            }
+        }
+        json.append("\n  ]\n}\n");
+        FileUtils.forceMkdir(report.getAbsoluteFile().getParentFile());
+        Files.write(report.toPath(), json.toString().getBytes(UTF_8));
+    }
+
+    private static long processCpuTime() {
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private static long usedHeap() {
+        long used = 0;
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static long jvmPeakHeap() {
+        long peak = 0;
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    static void appendString(final StringBuilder json, final String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (final char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * A measured phase of the build. I/O volume and counts are added by the
+     * code executing the phase and can be added concurrently.
+     */
+    public final class Phase implements AutoCloseable {
+
+        private final String name;
+        private final String subject;
+        private final String thread = Thread.currentThread().getName();
+        private final long startNanos = System.nanoTime();
+        private final Object event;
+        private final AtomicLong bytesRead = new AtomicLong();
+        private final AtomicLong bytesWritten = new AtomicLong();
+        private final AtomicLong files = new AtomicLong();
+        private final AtomicLong entries = new AtomicLong();
+        private long wallTime;
+        private boolean closed;
+
+        private Phase(final String name, final String subject) {
+            this.name = name;
+            this.subject = subject;
+            event = events == null ? null : events.begin();
+        }
+
+        public Phase addBytesRead(final long bytes) {
+            bytesRead.addAndGet(bytes);
+            return this;
+        }
+
+        public Phase addBytesWritten(final long bytes) {
+            bytesWritten.addAndGet(bytes);
+            return this;
+        }
+
+        public Phase addFiles(final long count) {
+            files.addAndGet(count);
+            return this;
+        }
+
+        public Phase addEntries(final long count) {
+            entries.addAndGet(count);
+            return this;
+        }
+
+        /**
+         * Adds the specified files to the file count and their sizes to the
+         * bytes read
+         *
+         * @param read the read files
+         * @return this phase
+         */
+        public Phase addFilesRead(final List<File> read) {
+            for (final File file : read) {
+                addFiles(1).addBytesRead(file.length());
+            }
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            wallTime = System.nanoTime() - startNanos;
+            phases.add(this);
+            if (event != null) {
+                events.commit(event, name, subject, bytesRead.get(), bytesWritten.get(), files.get(), entries.get());
+            }
+        }
+
+        private void appendTo(final StringBuilder json) {
+            json.append("    {\"name\": ");
+            appendString(json, name);
+            json.append(", \"subject\": ");
+            appendString(json, subject);
+            json.append(", \"thread\": ");
+            appendString(json, thread);
+            json.append(", \"wallTimeNanos\": ").append(wallTime);
+            json.append(", \"bytesRead\": ").append(bytesRead.get());
+            json.append(", \"bytesWritten\": ").append(bytesWritten.get());
+            json.append(", \"files\": ").append(files.get());
+            json.append(", \"entries\": ").append(entries.get()).append('}');
+        }
+    }
+
+}
@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
+import static com.google.common.base.Preconditions.*;
+import static java.util.stream.Collectors.toList;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Resolves, stages, extracts and analyzes the dependencies in concurrent
+ * stages connected by bounded queues. Every resolved dependency is staged as
+ * soon as it is available, archives are extracted as soon as they are staged
+ * and every JAR is analyzed as soon as it is staged or extracted. A full queue
+ * blocks the preceding stage, so the slowest stage sets the pace without
+ * buffering an unbounded number of artefacts. The extraction threads not busy
+ * with an archive decompress the multi-block XZ archives being extracted ahead
+ * of their extraction.
+ */
+public final class BuildPipeline {
+
+    private static final long POLL_INTERVAL = 100;
+    private static final Item END = new Item(null, -1, -1);
+
+    private final LocalMavenRepositoryBrowser browser;
+    private final ArchiveExtractor extractor;
+    private final String[] extensionsToUnarchive;
+    private final int queueCapacity;
+    private final int stagingThreads;
+    private final int extractionThreads;
+    private final int analysisThreads;
+    private final BuildMetrics metrics;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private BuildPipeline(final Configurer configurer, final LocalMavenRepositoryBrowser browser) {
+        this.browser = browser;
+        extractor = ArchiveExtractor.newInstance(configurer);
+        extensionsToUnarchive = (String[]) configurer.get(EXTENSION_TO_UNARCHIVE);
+        queueCapacity = Integer.parseInt(configurer.getAsString(PIPELINE_QUEUE_CAPACITY));
+        stagingThreads = threads(configurer.getAsString(STAGING_THREADS));
+        extractionThreads = threads(configurer.getAsString(EXTRACTION_THREADS));
+        analysisThreads = threads(configurer.getAsString(ANALYSIS_THREADS));
+        metrics = BuildMetrics.of(configurer);
+
+        checkNotNull(browser, "Repository Browser cannot be null");
+        checkNotNull(extensionsToUnarchive, "Extensions to unarchive cannot be null");
+        checkArgument(queueCapacity > 0, "Pipeline Queue Capacity must be positive");
+    }
+
+    /**
+     * Creates a new pipeline
+     *
+     * @param configurer the configuration of the current execution
+     * @param browser the browser to resolve and stage the dependencies with
+     * @return the pipeline instance
+     */
+    public static BuildPipeline newInstance(final Configurer configurer, final LocalMavenRepositoryBrowser browser) {
+        return new BuildPipeline(configurer, browser);
+    }
+
+    /**
+     * Runs the pipeline until all dependencies are staged, extracted and
+     * analyzed
+     *
+     * @param extractionDirectory the directory to extract the archives to
+     * @param analysis the analysis of every JAR, executed concurrently
+     * @return the staged and extracted dependencies
+     * @throws Exception if any stage fails
+     */
+    public Result run(final File extractionDirectory, final JarTask analysis) throws Exception {
+        checkNotNull(extractionDirectory, "Extraction Directory cannot be null");
+        checkNotNull(analysis, "Analysis cannot be null");
+
+        final Queue<Item> jars = new ConcurrentLinkedQueue<>();
+        final Queue<File> extracted = new ConcurrentLinkedQueue<>();
+        final AtomicInteger extractingArchives = new AtomicInteger();
+        final Stage analyzing = new Stage("analysis", analysisThreads, (item, phase) -> {
+            analysis.run(item.file);
+            jars.add(item);
+            phase.addFiles(1).addBytesRead(item.file.length());
+        });
+        final Stage extracting = new Stage("extraction", extractionThreads, (item, phase) -> {
+            final List<File> files;
+            final int busyThreads = extractingArchives.incrementAndGet();
+            try {
+                files = extractor.extract(item.file, item.dependency, extractionDirectory,
+                        Math.max(1, extractionThreads / busyThreads));
+            } finally {
+                extractingArchives.decrementAndGet();
+            }
+            extracted.addAll(files);
+            phase.addFiles(1).addBytesRead(item.file.length()).addEntries(files.size());
+            phase.addBytesWritten(files.stream().mapToLong(File::length).sum());
+            int position = 0;
+            for (final File file : files) {
+                if (isJar(file)) {
+                    analyzing.put(new Item(file, item.dependency, ++position));
+                }
+            }
+        });
+        final Stage staging = new Stage("staging", stagingThreads, (item, phase) -> {
+            final File staged = browser.stage(item.file, phase);
+            if (isArchive(staged)) {
+                extracting.put(new Item(staged, item.dependency, 0));
+            } else if (isJar(staged)) {
+                analyzing.put(new Item(staged, item.dependency, 0));
+            }
+        });
+        final List<Stage> stages = Arrays.asList(staging, extracting, analyzing);
+        try {
+            browser.resolveArtefacts((dependency, index) -> staging.put(new Item(dependency, index, 0)));
+            // every stage ends once all stages feeding it have ended
+            staging.finish();
+            extracting.finish();
+            analyzing.finish();
+        } catch (final Exception e) {
+            final Throwable cause = failure.get();
+            throw cause instanceof Exception && cause != e ? (Exception) cause : e;
+        } finally {
+            stages.forEach(Stage::abort);
+        }
+        extractor.evictCache();
+
+        // the classpath is in the order of declaration like the staged dependencies
+        //@formatter:off
+        final List<File> classpath = jars.stream()
+                                         .sorted(Comparator.comparingInt((Item i) -> i.dependency)
+                                                           .thenComparingInt(i -> i.position))
+                                         .map(i -> i.file)
+                                         .collect(toList());
+        //@formatter:on
+        return new Result(classpath, Lists.newArrayList(extracted), extractor.getOrigins());
+    }
+
+    private boolean isArchive(final File file) {
+        return ArchiveExtractor.isArchive(file.getName(), extensionsToUnarchive);
+    }
+
+    private static boolean isJar(final File file) {
+        return file.getName().endsWith(".jar");
+    }
+
+    private static int threads(final String configured) {
+        final int threads = Integer.parseInt(configured);
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Task executed for every JAR of the classpath
+     */
+    @FunctionalInterface
+    public interface JarTask {
+
+        void run(File jar) throws Exception;
+    }
+
+    public static final class Result {
+
+        private final List<File> classpath;
+        private final List<File> extractedFiles;
+        private final Map<File, String> origins;
+
+        private Result(final List<File> classpath, final List<File> extractedFiles,
+                final Map<File, String> origins) {
+            this.classpath = Collections.unmodifiableList(classpath);
+            this.extractedFiles = Collections.unmodifiableList(extractedFiles);
+            this.origins = origins;
+        }
+
+        /**
+         * @return the staged, unstaged and extracted JARs in the order of
+         *         declaration of the dependencies they originate from
+         */
+        public List<File> getClasspath() {
+            return classpath;
+        }
+
+        /**
+         * @return all files extracted from the archives
+         */
+        public List<File> getExtractedFiles() {
+            return extractedFiles;
+        }
+
+        /**
+         * @return the extracted files mapped to their location in the
+         *         extracted archives
+         */
+        public Map<File, String> getOrigins() {
+            return origins;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Worker {
+
+        void process(Item item, BuildMetrics.Phase phase) throws Exception;
+    }
+
+    private static final class Item {
+
+        private final File file;
+        private final int dependency;
+        private final int position;
+
+        private Item(final File file, final int dependency, final int position) {
+            this.file = file;
+            this.dependency = dependency;
+            this.position = position;
+        }
+    }
+
+    private final class Stage {
+
+        private final BlockingQueue<Item> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final BuildMetrics.Phase phase;
+        private final ExecutorService executor;
+        private final List<Future<Void>> workers = Lists.newArrayList();
+        private boolean finished;
+
+        private Stage(final String name, final int threads, final Worker worker) {
+            phase = metrics.start(name);
+            //@formatter:off
+            executor = Executors.newFixedThreadPool(threads,
+                                        new ThreadFactoryBuilder()
+                                                .setNameFormat("fatjar-" + name + "-%d")
+                                                .setDaemon(true)
+                                                .build());
+            //@formatter:on
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(() -> {
+                    try {
+                        for (Item item = take(); item != END; item = take()) {
+                            worker.process(item, phase);
+                        }
+                    } catch (final Exception e) {
+                        // unblocks the other stages
+                        failure.compareAndSet(null, e);
+                        throw e;
+                    }
+                    return null;
+                }));
+            }
+        }
+
+        /**
+         * Passes an item to this stage, waiting while the queue is full
+         */
+        private void put(final Item item) {
+            try {
+                while (!queue.offer(item, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    checkState(failure.get() == null, "Build pipeline has been aborted");
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Build pipeline has been interrupted", e);
+            }
+        }
+
+        private Item take() throws InterruptedException {
+            Item item;
+            while ((item = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS)) == null) {
+                checkState(failure.get() == null, "Build pipeline has been aborted");
+            }
+            return item;
+        }
+
+        /**
+         * Waits until all items passed to this stage have been processed
+         */
+        private void finish() throws Exception {
+            workers.forEach(w -> put(END));
+            for (final Future<Void> worker : workers) {
+                try {
+                    worker.get();
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+            }
+            finished = true;
+            phase.close();
+        }
+
+        private void abort() {
+            executor.shutdownNow();
+            try {
+                // the extractions still running must not write into a directory being deleted
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!finished) {
+                phase.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Definition of a single fat JAR bundle. The include and exclude filters are
+ * glob patterns matched against the file names of the JARs on the classpath.
+ */
+public final class Bundle {
+
+    private String bundleSymbolicName;
+    private String bundleVersion;
+    private String targetFilename;
+    private String mainClass;
+    private String[] includes;
+    private String[] excludes;
+
+    public Bundle() {
+        // required by Maven to inject the configuration
+    }
+
+    public static Bundle newInstance(final String bundleSymbolicName, final String bundleVersion,
+            final String targetFilename, final String mainClass, final String[] includes,
+            final String[] excludes) {
+        final Bundle bundle = new Bundle();
+        bundle.bundleSymbolicName = bundleSymbolicName;
+        bundle.bundleVersion = bundleVersion;
+        bundle.targetFilename = targetFilename;
+        bundle.mainClass = mainClass;
+        bundle.includes = includes;
+        bundle.excludes = excludes;
+        return bundle;
+    }
+
+    public String getBundleSymbolicName() {
+        return bundleSymbolicName;
+    }
+
+    public String getBundleVersion() {
+        return bundleVersion;
+    }
+
+    public String getTargetFilename() {
+        return targetFilename;
+    }
+
+    public String getMainClass() {
+        return mainClass;
+    }
+
+    public String[] getIncludes() {
+        return includes == null ? new String[0] : includes.clone();
+    }
+
+    public String[] getExcludes() {
+        return excludes == null ? new String[0] : excludes.clone();
+    }
+
+    /**
+     * Checks whether the specified JAR belongs to this bundle
+     *
+     * @param jar the JAR to check
+     * @return {@code true} if the JAR matches any include (or no includes are
+     *         specified) and none of the excludes, otherwise {@code false}
+     */
+    public boolean accepts(final File jar) {
+        checkNotNull(jar, "JAR cannot be null");
+
+        final String[] include = getIncludes();
+        final boolean included = include.length == 0 || matches(include, jar);
+        return included && !matches(getExcludes(), jar);
+    }
+
+    private static boolean matches(final String[] patterns, final File jar) {
+        //@formatter:off
+        return Arrays.stream(patterns)
+                     .map(p -> FileSystems.getDefault().getPathMatcher("glob:" + p))
+                     .anyMatch((final PathMatcher m) -> m.matches(Paths.get(jar.getName())));
+        //@formatter:on
+    }
+
+    @Override
+    public String toString() {
+        return bundleSymbolicName + ':' + bundleVersion + " -> " + targetFilename + " main=" + mainClass + " includes="
+                + Arrays.toString(getIncludes()) + " excludes=" + Arrays.toString(getExcludes());
+    }
+
+}
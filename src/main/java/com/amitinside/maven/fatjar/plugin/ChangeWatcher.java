@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.google.common.base.Preconditions.*;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Watches files for modifications through the {@link WatchService} of the
+ * default file system. As only directories can be registered, the parent
+ * directories of the watched files are registered and the events of all other
+ * files in these directories are ignored.
+ */
+public final class ChangeWatcher implements Closeable {
+
+    private final WatchService watchService;
+    private final long quietPeriod;
+    private final Map<Path, WatchKey> directories = Maps.newHashMap();
+    private final Set<Path> files = Sets.newHashSet();
+
+    private ChangeWatcher(final long quietPeriod) throws IOException {
+        checkArgument(quietPeriod >= 0, "Quiet period cannot be negative");
+
+        watchService = FileSystems.getDefault().newWatchService();
+        this.quietPeriod = quietPeriod;
+    }
+
+    /**
+     * Creates a new watcher
+     *
+     * @param quietPeriod the time in milliseconds without further changes
+     *            after which a change is reported, such that the files written
+     *            by a single operation are reported at once
+     * @return the watcher instance
+     * @throws IOException if the file system cannot be watched
+     */
+    public static ChangeWatcher newInstance(final long quietPeriod) throws IOException {
+        return new ChangeWatcher(quietPeriod);
+    }
+
+    /**
+     * Replaces the watched files
+     *
+     * @param watched the files to watch which do not need to exist
+     * @throws IOException if any of the parent directories cannot be watched
+     */
+    public void watch(final Collection<File> watched) throws IOException {
+        checkNotNull(watched, "Watched files cannot be null");
+
+        files.clear();
+        final Set<Path> parents = Sets.newHashSet();
+        for (final File file : watched) {
+            final Path path = file.getAbsoluteFile().toPath();
+            files.add(path);
+            parents.add(path.getParent());
+        }
+        for (final Iterator<Map.Entry<Path, WatchKey>> it = directories.entrySet().iterator(); it.hasNext();) {
+            final Map.Entry<Path, WatchKey> directory = it.next();
+            if (!parents.contains(directory.getKey())) {
+                directory.getValue().cancel();
+                it.remove();
+            }
+        }
+        for (final Path parent : parents) {
+            if (!directories.containsKey(parent) && parent.toFile().isDirectory()) {
+                directories.put(parent, parent.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE));
+            }
+        }
+    }
+
+    /**
+     * Blocks until any of the watched files has been created, modified or
+     * deleted and no further change occurred within the quiet period
+     *
+     * @return the changed files which are all watched files if events have
+     *         been lost
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Set<File> awaitChanges() throws InterruptedException {
+        final Set<File> changed = Sets.newHashSet();
+        WatchKey key = watchService.take();
+        while (key != null) {
+            collect(key, changed);
+            // several events are usually emitted for writing a single file
+            key = changed.isEmpty() ? watchService.take() : watchService.poll(quietPeriod, TimeUnit.MILLISECONDS);
+        }
+        return changed;
+    }
+
+    private void collect(final WatchKey key, final Set<File> changed) {
+        final Path directory = (Path) key.watchable();
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                files.forEach(f -> changed.add(f.toFile()));
+                continue;
+            }
+            final Path file = directory.resolve((Path) event.context());
+            if (files.contains(file)) {
+                changed.add(file.toFile());
+            }
+        }
+        if (!key.reset()) {
+            // the directory is not accessible anymore
+            directories.remove(directory);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+}
@@ -0,0 +1,322 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
+import static com.google.common.base.Preconditions.*;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.io.FileUtils;
+
+import com.amitinside.maven.fatjar.plugin.util.ClassFileHelper;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import aQute.bnd.header.Attrs;
+import aQute.bnd.header.Parameters;
+
+/**
+ * Analyzes the packages contained in and referenced by the JARs on a bundle
+ * classpath. The analysis of every JAR is persisted in an index keyed by the
+ * SHA-256 of its content, so unchanged JARs are analyzed only once. The
+ * analyses kept in memory are keyed by the same hash, so a JAR changed in place,
+ * e.g. a restaged snapshot, is analyzed again.
+ */
+public final class ClasspathAnalyzer {
+
+    private static final String INDEX_FORMAT = "v1";
+    private static final String CLASS_EXTENSION = ".class";
+    private static final String PACKAGES = "packages";
+    private static final String REFERENCES = "references";
+    private static final String VERSION_PREFIX = "version.";
+
+    private final File indexDirectory;
+    private final int threads;
+    private final Map<String, JarAnalysis> analyses = Maps.newConcurrentMap();
+
+    private ClasspathAnalyzer(final Configurer configurer) {
+        indexDirectory = new File(configurer.getAsString(ANALYSIS_INDEX_DIRECTORY));
+        final int configuredThreads = Integer.parseInt(configurer.getAsString(ANALYSIS_THREADS));
+        threads = configuredThreads > 0 ? configuredThreads : Runtime.getRuntime().availableProcessors();
+
+        checkArgument(!indexDirectory.getPath().trim().isEmpty(), "Analysis Index Directory cannot be empty");
+    }
+
+    public static ClasspathAnalyzer newInstance(final Configurer configurer) {
+        return new ClasspathAnalyzer(configurer);
+    }
+
+    /**
+     * Analyzes the specified classpath concurrently
+     *
+     * @param classpath the JARs to analyze, the first declared package version
+     *            wins
+     * @return the analysis of the whole classpath
+     * @throws IOException if any of the JARs cannot be analyzed
+     */
+    public Analysis analyze(final List<File> classpath) throws IOException {
+        checkNotNull(classpath, "Classpath cannot be null");
+
+        final List<JarAnalysis> jars = Lists.newArrayList();
+        if (!classpath.isEmpty()) {
+            FileUtils.forceMkdir(indexDirectory);
+            //@formatter:off
+            final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, classpath.size()),
+                                                    new ThreadFactoryBuilder()
+                                                            .setNameFormat("fatjar-analyzer-%d")
+                                                            .setDaemon(true)
+                                                            .build());
+            //@formatter:on
+            try {
+                final List<Future<JarAnalysis>> futures = Lists.newArrayList();
+                for (final File jar : classpath) {
+                    futures.add(executor.submit(() -> analyzeCached(jar)));
+                }
+                for (final Future<JarAnalysis> future : futures) {
+                    jars.add(future.get());
+                }
+            } catch (final ExecutionException e) {
+                throw new IOException(e.getCause().getMessage(), e.getCause());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Classpath analysis has been interrupted", e);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        return Analysis.of(classpath, jars);
+    }
+
+    /**
+     * Analyzes a single JAR ahead of the classpath it belongs to. The
+     * analysis is kept in memory and reused by {@link #analyze(List)}.
+     *
+     * @param jar the JAR to analyze
+     * @throws IOException if the JAR cannot be analyzed
+     */
+    public void prepare(final File jar) throws IOException {
+        checkNotNull(jar, "JAR cannot be null");
+
+        FileUtils.forceMkdir(indexDirectory);
+        analyzeCached(jar);
+    }
+
+    private JarAnalysis analyzeCached(final File jar) throws IOException {
+        // analyzed outside of the map to not block other JARs of the same bin
+        final String hash;
+        final JarAnalysis analysis;
+        try {
+            hash = com.google.common.io.Files.asByteSource(jar).hash(Hashing.sha256()).toString();
+            final JarAnalysis cached = analyses.get(hash);
+            if (cached != null) {
+                return cached;
+            }
+            analysis = analyze(jar, hash);
+        } catch (final IOException e) {
+            throw new IOException("Cannot analyze " + jar + ": " + e.getMessage(), e);
+        }
+        final JarAnalysis concurrent = analyses.putIfAbsent(hash, analysis);
+        return concurrent == null ? analysis : concurrent;
+    }
+
+    private JarAnalysis analyze(final File jar, final String hash) throws IOException {
+        final File indexFile = new File(indexDirectory, hash + '.' + INDEX_FORMAT + ".properties");
+        if (indexFile.isFile()) {
+            final Properties index = new Properties();
+            try (InputStream in = new FileInputStream(indexFile)) {
+                index.load(in);
+            }
+            return JarAnalysis.of(index);
+        }
+        final JarAnalysis analysis = scan(jar);
+        final File temp = new File(indexFile.getPath() + '.' + UUID.randomUUID());
+        try (OutputStream out = new FileOutputStream(temp)) {
+            analysis.toProperties().store(out, jar.getName());
+        }
+        Files.move(temp.toPath(), indexFile.toPath(), REPLACE_EXISTING);
+        return analysis;
+    }
+
+    private static JarAnalysis scan(final File file) throws IOException {
+        final Set<String> packages = Sets.newTreeSet();
+        final Set<String> references = Sets.newTreeSet();
+        final Map<String, String> versions = Maps.newTreeMap();
+        try (JarFile jar = new JarFile(file, false)) {
+            for (final Enumeration<? extends ZipEntry> e = jar.entries(); e.hasMoreElements();) {
+                final ZipEntry entry = e.nextElement();
+                final String packageName = ClassFileHelper.getPackageName(entry.getName());
+                if (entry.isDirectory() || packageName == null) {
+                    continue;
+                }
+                packages.add(packageName);
+                if (entry.getName().endsWith(CLASS_EXTENSION)) {
+                    final byte[] bytes;
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        bytes = ByteStreams.toByteArray(in);
+                    }
+                    for (final String type : ClassFileHelper.getReferencedTypes(bytes, false)) {
+                        final int index = type.lastIndexOf('/');
+                        if (index > 0) {
+                            references.add(type.substring(0, index).replace('/', '.'));
+                        }
+                    }
+                }
+            }
+            final Manifest manifest = jar.getManifest();
+            final String exports = manifest == null ? null : manifest.getMainAttributes().getValue("Export-Package");
+            if (exports != null) {
+                for (final Map.Entry<String, Attrs> export : new Parameters(exports).entrySet()) {
+                    // duplicate keys are marked with a trailing ~
+                    final String packageName = export.getKey().replaceAll("~+$", "");
+                    final String version = export.getValue().getVersion();
+                    if (version != null && packages.contains(packageName)) {
+                        versions.putIfAbsent(packageName, version);
+                    }
+                }
+            }
+        }
+        return new JarAnalysis(packages, references, versions);
+    }
+
+    /**
+     * The packages of the classpath which are exported with their versions and
+     * the packages referenced from the classpath which need to be imported
+     */
+    public static final class Analysis {
+
+        private final SortedMap<String, String> exports;
+        private final SortedSet<String> imports;
+        private final SortedMap<String, List<File>> splitPackages;
+
+        private Analysis(final SortedMap<String, String> exports, final SortedSet<String> imports,
+                final SortedMap<String, List<File>> splitPackages) {
+            this.exports = exports;
+            this.imports = imports;
+            this.splitPackages = splitPackages;
+        }
+
+        private static Analysis of(final List<File> classpath, final List<JarAnalysis> jars) {
+            final SortedMap<String, String> exports = Maps.newTreeMap();
+            final Map<String, List<File>> origins = Maps.newHashMap();
+            final Set<String> references = Sets.newHashSet();
+            for (int i = 0; i < jars.size(); i++) {
+                final JarAnalysis jar = jars.get(i);
+                for (final String packageName : jar.packages) {
+                    origins.computeIfAbsent(packageName, p -> Lists.newArrayList()).add(classpath.get(i));
+                    final String version = jar.versions.get(packageName);
+                    if (exports.get(packageName) == null) {
+                        exports.put(packageName, version);
+                    }
+                }
+                references.addAll(jar.references);
+            }
+            // the referenced exports are imported as well to be substitutable
+            references.removeIf(p -> p.startsWith("java."));
+            origins.values().removeIf(o -> o.size() < 2);
+            // the versions can be null
+            return new Analysis(Collections.unmodifiableSortedMap(exports), ImmutableSortedSet.copyOf(references),
+                    ImmutableSortedMap.copyOf(origins));
+        }
+
+        /**
+         * @return the contained packages mapped to their declared version or
+         *         {@code null} if not declared
+         */
+        public SortedMap<String, String> getExports() {
+            return exports;
+        }
+
+        /**
+         * @return the referenced packages excluding {@code java.*}, including
+         *         the contained ones which are exported as well
+         */
+        public SortedSet<String> getImports() {
+            return imports;
+        }
+
+        /**
+         * @return the packages contained in more than one JAR mapped to these
+         *         JARs
+         */
+        public SortedMap<String, List<File>> getSplitPackages() {
+            return splitPackages;
+        }
+    }
+
+    private static final class JarAnalysis {
+
+        private final Set<String> packages;
+        private final Set<String> references;
+        private final Map<String, String> versions;
+
+        private JarAnalysis(final Set<String> packages, final Set<String> references,
+                final Map<String, String> versions) {
+            this.packages = packages;
+            this.references = references;
+            this.versions = versions;
+        }
+
+        private static JarAnalysis of(final Properties index) {
+            final Splitter splitter = Splitter.on(',').omitEmptyStrings();
+            final Set<String> packages = Sets.newTreeSet(splitter.split(index.getProperty(PACKAGES, "")));
+            final Set<String> references = Sets.newTreeSet(splitter.split(index.getProperty(REFERENCES, "")));
+            final Map<String, String> versions = Maps.newTreeMap();
+            for (final String key : index.stringPropertyNames()) {
+                if (key.startsWith(VERSION_PREFIX)) {
+                    versions.put(key.substring(VERSION_PREFIX.length()), index.getProperty(key));
+                }
+            }
+            return new JarAnalysis(packages, references, versions);
+        }
+
+        private Properties toProperties() {
+            final Properties index = new Properties();
+            index.setProperty(PACKAGES, Joiner.on(',').join(packages));
+            index.setProperty(REFERENCES, Joiner.on(',').join(references));
+            for (final Map.Entry<String, String> version : versions.entrySet()) {
+                index.setProperty(VERSION_PREFIX + version.getKey(), version.getValue());
+            }
+            return index;
+        }
+    }
+
+}
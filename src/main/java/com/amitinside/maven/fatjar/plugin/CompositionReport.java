@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Composition of a built bundle. The compressed and uncompressed bytes as well
+ * as the number of classes and resources of the bundle are attributed to the
+ * JARs they have been taken from, to the archives these JARs have been
+ * extracted from and to the originating dependencies, i.e. the JARs and
+ * archives resolved from the repository. Entries not taken from any JAR such
+ * as the manifest are attributed to the bundle itself.
+ */
+public final class CompositionReport {
+
+    private static final String ARCHIVE_SEPARATOR = "!/";
+    private static final String CLASS_EXTENSION = ".class";
+    private static final String GENERATED = "(bundle)";
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private final String bundle;
+    private final long size;
+    private int entries;
+    private final Usage total = new Usage();
+    private final SortedMap<String, Usage> dependencies = Maps.newTreeMap();
+    private final SortedMap<String, Usage> nestedArchives = Maps.newTreeMap();
+    private final SortedMap<String, Usage> jars = Maps.newTreeMap();
+    private final SortedMap<String, SortedSet<String>> packages = Maps.newTreeMap();
+
+    private CompositionReport(final String bundle, final File target) {
+        this.bundle = bundle;
+        size = target.length();
+    }
+
+    /**
+     * Creates the report of a bundle whose entries have been taken from the
+     * specified JARs. An entry contained in more than one JAR is attributed to
+     * the first one like on the classpath of bnd.
+     *
+     * @param bundle the symbolic name of the bundle
+     * @param target the built bundle
+     * @param classpath the JARs the bundle has been built from
+     * @param origins the extracted JARs mapped to their location in the
+     *            archives they have been extracted from
+     * @return the report instance
+     * @throws IOException if the bundle or any of the JARs cannot be read
+     */
+    public static CompositionReport ofClasspath(final String bundle, final File target, final List<File> classpath,
+            final Map<File, String> origins) throws IOException {
+        checkNotNull(classpath, "Classpath cannot be null");
+
+        final Map<String, String> sources = Maps.newHashMap();
+        for (final File jar : classpath) {
+            final String origin = origin(jar, origins);
+            try (ZipFile zip = new ZipFile(jar)) {
+                for (final Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                    sources.putIfAbsent(e.nextElement().getName(), origin);
+                }
+            }
+        }
+        final CompositionReport report = new CompositionReport(bundle, target);
+        try (ZipFile zip = new ZipFile(target)) {
+            for (final Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                final ZipEntry entry = e.nextElement();
+                report.entries++;
+                if (!entry.isDirectory()) {
+                    final String name = entry.getName();
+                    final boolean isClass = name.endsWith(CLASS_EXTENSION);
+                    final String origin = sources.getOrDefault(name, GENERATED);
+                    report.add(origin, entry.getCompressedSize(), entry.getSize(), isClass ? 1 : 0, isClass ? 0 : 1);
+                    if (isClass) {
+                        report.addPackage(name, origin);
+                    }
+                }
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Creates the report of a bundle storing the specified JARs. The classes
+     * and resources are counted within the stored JARs.
+     *
+     * @param bundle the symbolic name of the bundle
+     * @param target the built bundle
+     * @param embedded the stored JARs mapped to their entry names
+     * @param origins the extracted JARs mapped to their location in the
+     *            archives they have been extracted from
+     * @return the report instance
+     * @throws IOException if the bundle or any of the JARs cannot be read
+     */
+    public static CompositionReport ofEmbedded(final String bundle, final File target,
+            final Map<String, File> embedded, final Map<File, String> origins) throws IOException {
+        checkNotNull(embedded, "Embedded JARs cannot be null");
+
+        final CompositionReport report = new CompositionReport(bundle, target);
+        try (ZipFile zip = new ZipFile(target)) {
+            for (final Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                final ZipEntry entry = e.nextElement();
+                report.entries++;
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                final File jar = embedded.get(entry.getName());
+                if (jar == null) {
+                    report.add(GENERATED, entry.getCompressedSize(), entry.getSize(), 0, 1);
+                    continue;
+                }
+                final String origin = origin(jar, origins);
+                int classes = 0;
+                int resources = 0;
+                try (ZipFile content = new ZipFile(jar)) {
+                    for (final Enumeration<? extends ZipEntry> c = content.entries(); c.hasMoreElements();) {
+                        final ZipEntry contained = c.nextElement();
+                        if (contained.isDirectory()) {
+                            continue;
+                        }
+                        if (contained.getName().endsWith(CLASS_EXTENSION)) {
+                            classes++;
+                            report.addPackage(contained.getName(), origin);
+                        } else {
+                            resources++;
+                        }
+                    }
+                }
+                report.add(origin, entry.getCompressedSize(), entry.getSize(), classes, resources);
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Checks the bundle against the specified budgets
+     *
+     * @param maxSizeMegabytes the maximum size of the bundle or {@code 0} if
+     *            unlimited
+     * @param maxEntries the maximum number of entries of the bundle or
+     *            {@code 0} if unlimited
+     * @param maxDependencySizeMegabytes the maximum compressed size contributed
+     *            by a single dependency or {@code 0} if unlimited
+     * @return the exceeded budgets, empty if none
+     */
+    public List<String> checkBudgets(final long maxSizeMegabytes, final long maxEntries,
+            final long maxDependencySizeMegabytes) {
+        final List<String> violations = Lists.newArrayList();
+        if (maxSizeMegabytes > 0 && size > maxSizeMegabytes * MEGABYTE) {
+            violations.add(bundle + " has " + size + " bytes, exceeding the budget of " + maxSizeMegabytes + " MB");
+        }
+        if (maxEntries > 0 && entries > maxEntries) {
+            violations.add(bundle + " has " + entries + " entries, exceeding the budget of " + maxEntries);
+        }
+        if (maxDependencySizeMegabytes > 0) {
+            for (final Map.Entry<String, Usage> dependency : dependencies.entrySet()) {
+                final long bytes = dependency.getValue().compressedBytes;
+                if (bytes > maxDependencySizeMegabytes * MEGABYTE) {
+                    violations.add(dependency.getKey() + " contributes " + bytes + " bytes to " + bundle
+                            + ", exceeding the budget of " + maxDependencySizeMegabytes + " MB");
+                }
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * Writes the report as JSON
+     *
+     * @param report the file to write to
+     * @throws IOException if the file cannot be written
+     */
+    public void write(final File report) throws IOException {
+        checkNotNull(report, "Report cannot be null");
+
+        final StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"bundle\": ");
+        BuildMetrics.appendString(json, bundle);
+        json.append(",\n");
+        json.append("  \"sizeBytes\": ").append(size).append(",\n");
+        json.append("  \"entries\": ").append(entries).append(",\n");
+        json.append("  \"total\": ");
+        total.appendTo(json);
+        json.append(",\n");
+        appendUsages(json, "dependencies", dependencies);
+        json.append(",\n");
+        appendUsages(json, "nestedArchives", nestedArchives);
+        json.append(",\n");
+        appendUsages(json, "jars", jars);
+        json.append(",\n");
+        json.append("  \"packages\": {");
+        boolean first = true;
+        for (final Map.Entry<String, SortedSet<String>> entry : packages.entrySet()) {
+            json.append(first ? "\n    " : ",\n    ");
+            BuildMetrics.appendString(json, entry.getKey());
+            json.append(": [");
+            boolean firstJar = true;
+            for (final String jar : entry.getValue()) {
+                json.append(firstJar ? "" : ", ");
+                BuildMetrics.appendString(json, jar);
+                firstJar = false;
+            }
+            json.append(']');
+            first = false;
+        }
+        json.append("\n  }\n}\n");
+        Files.write(report.toPath(), json.toString().getBytes(UTF_8));
+    }
+
+    private static void appendUsages(final StringBuilder json, final String name, final Map<String, Usage> usages) {
+        json.append("  \"").append(name).append("\": {");
+        boolean first = true;
+        for (final Map.Entry<String, Usage> usage : usages.entrySet()) {
+            json.append(first ? "\n    " : ",\n    ");
+            BuildMetrics.appendString(json, usage.getKey());
+            json.append(": ");
+            usage.getValue().appendTo(json);
+            first = false;
+        }
+        json.append("\n  }");
+    }
+
+    private void add(final String origin, final long compressed, final long uncompressed, final int classes,
+            final int resources) {
+        total.add(compressed, uncompressed, classes, resources);
+        jars.computeIfAbsent(origin, o -> new Usage()).add(compressed, uncompressed, classes, resources);
+        // the dependency is the outermost archive, the nested archive the innermost one
+        final int outer = origin.indexOf(ARCHIVE_SEPARATOR);
+        final String dependency = outer < 0 ? origin : origin.substring(0, outer);
+        dependencies.computeIfAbsent(dependency, d -> new Usage()).add(compressed, uncompressed, classes, resources);
+        final int inner = origin.lastIndexOf(ARCHIVE_SEPARATOR);
+        if (inner > outer) {
+            final String archive = origin.substring(0, inner);
+            nestedArchives.computeIfAbsent(archive, a -> new Usage()).add(compressed, uncompressed, classes,
+                    resources);
+        }
+    }
+
+    private void addPackage(final String entryName, final String origin) {
+        final int separator = entryName.lastIndexOf('/');
+        final String packageName = separator < 0 ? "" : entryName.substring(0, separator).replace('/', '.');
+        packages.computeIfAbsent(packageName, p -> Sets.newTreeSet()).add(origin);
+    }
+
+    private static String origin(final File jar, final Map<File, String> origins) {
+        final String origin = origins.get(jar);
+        return origin == null ? jar.getName() : origin;
+    }
+
+    private static final class Usage {
+
+        private long compressedBytes;
+        private long uncompressedBytes;
+        private int classes;
+        private int resources;
+
+        private void add(final long compressed, final long uncompressed, final int classes, final int resources) {
+            compressedBytes += compressed;
+            uncompressedBytes += uncompressed;
+            this.classes += classes;
+            this.resources += resources;
+        }
+
+        private void appendTo(final StringBuilder json) {
+            json.append("{\"compressedBytes\": ").append(compressedBytes);
+            json.append(", \"uncompressedBytes\": ").append(uncompressedBytes);
+            json.append(", \"classes\": ").append(classes);
+            json.append(", \"resources\": ").append(resources).append('}');
+        }
+    }
+
+}
@@ -15,25 +15,73 @@ import java.util.EnumMap;
 
 import com.google.common.collect.Maps;
 
-public enum Configurer {
-
-    INSTANCE;
+/**
+ * Configuration of a single plugin execution which is passed to all the
+ * participating components
+ */
+public final class Configurer {
 
     public enum Params {
         MAVEN_LOCATION,
         POM_LOCATION,
-        BUNDLE_SYMBOLIC_NAME,
-        BUNDLE_VERSION,
+        DEPENDENCIES,
+        BUNDLES,
         EXTENSION_TO_UNARCHIVE,
         SOURCE_DIRECTORY,
-        TARGET_FILENAME,
         TARGET_DIRECTORY,
         BUNDLE_RESOLVABLE,
-        UPDATE_VERSION;
+        UPDATE_VERSION,
+        PLUGIN_VERSION,
+        EXTRACTION_THREADS,
+        EXTRACTION_MODE,
+        EXTRACTION_INCLUDES,
+        NESTED_ARCHIVE_DEPTH,
+        USE_EXTRACTION_CACHE,
+        EXTRACTION_CACHE_DIRECTORY,
+        EXTRACTION_CACHE_SIZE,
+        STAGING_MODE,
+        PIPELINED,
+        PIPELINE_QUEUE_CAPACITY,
+        STAGING_THREADS,
+        VERSIONS_UPDATER,
+        VERSIONS_REPORT,
+        REPRODUCIBLE_OUTPUT,
+        WRITER_THREADS,
+        COMPRESSION_LEVEL,
+        STORE_COMPRESSED_ENTRIES,
+        WRITER_MEMORY,
+        LOW_MEMORY,
+        MINIMIZE,
+        MINIMIZATION_ROOTS,
+        MINIMIZATION_KEEPS,
+        USE_ANALYSIS_INDEX,
+        ANALYSIS_INDEX_DIRECTORY,
+        ANALYSIS_THREADS,
+        FAIL_ON_CLASS_CONFLICTS,
+        EMBED_DEPENDENCIES,
+        INCREMENTAL,
+        STARTUP_CLASS_LIST,
+        STARTUP_TRAINING,
+        STARTUP_TRAINING_ARGUMENTS,
+        STARTUP_TRAINING_TIMEOUT,
+        STARTUP_ARCHIVE,
+        WRITE_COMPOSITION_REPORT,
+        BUNDLE_SIZE_BUDGET,
+        BUNDLE_ENTRY_BUDGET,
+        DEPENDENCY_SIZE_BUDGET,
+        BUILD_METRICS;
     }
 
     private final EnumMap<Params, Object> configuration = Maps.newEnumMap(Params.class);
 
+    private Configurer() {
+        // use factory method
+    }
+
+    public static Configurer newInstance() {
+        return new Configurer();
+    }
+
     public void put(final Params key, final Object value) {
         checkNotNull(key, "Key cannot be null");
         checkNotNull(value, "Value cannot be null");
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
+import static com.google.common.base.Preconditions.*;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+import com.amitinside.maven.fatjar.plugin.util.MojoHelper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Collects the dependencies to bundle from the effective model of the project,
+ * i.e. with the versions inherited from parents and dependency management.
+ * Versions declared by a property are taken from the POM on disk, which could
+ * have been updated by the versions updater, unless they are overridden for
+ * the current build. Dependencies added to the POM on disk after the project
+ * has been loaded are collected as well.
+ */
+public final class DependencyCollector {
+
+    private final String pomLocation;
+    private final List<Dependency> effectiveDependencies;
+    private final Properties versionOverrides;
+
+    @SuppressWarnings("unchecked")
+    private DependencyCollector(final Configurer configurer, final Properties versionOverrides) {
+        pomLocation = configurer.getAsString(POM_LOCATION);
+        final List<Dependency> dependencies = (List<Dependency>) configurer.get(DEPENDENCIES);
+        effectiveDependencies = dependencies == null ? Collections.emptyList() : dependencies;
+        this.versionOverrides = versionOverrides;
+
+        checkArgument(!pomLocation.trim().isEmpty(), "POM Location cannot be empty");
+        checkNotNull(versionOverrides, "Version Overrides cannot be null");
+    }
+
+    /**
+     * Creates a new collector
+     *
+     * @param configurer the configuration of the current execution
+     * @param versionOverrides the version properties overriding the ones
+     *            declared in the POM
+     * @return the collector instance
+     */
+    public static DependencyCollector newInstance(final Configurer configurer, final Properties versionOverrides) {
+        return new DependencyCollector(configurer, versionOverrides);
+    }
+
+    /**
+     * Collects the dependencies in the order of declaration
+     *
+     * @return the dependencies with their versions to use in this build
+     * @throws IOException if the POM cannot be read
+     * @throws XmlPullParserException if the POM cannot be parsed
+     * @throws IllegalStateException if the version of any dependency cannot
+     *             be determined
+     */
+    public List<Dependency> collect() throws IOException, XmlPullParserException {
+        final Model model;
+        // the POM could have been updated on disk in the meantime
+        try (Reader reader = new FileReader(pomLocation)) {
+            model = new MavenXpp3Reader().read(reader);
+        }
+        final Properties properties = new Properties();
+        properties.putAll(model.getProperties());
+        properties.putAll(versionOverrides);
+
+        final Map<String, Dependency> declared = Maps.newLinkedHashMap();
+        for (final Dependency dependency : model.getDependencies()) {
+            declared.put(dependency.getManagementKey(), dependency);
+        }
+        final List<Dependency> dependencies = Lists.newArrayList();
+        for (final Dependency effective : effectiveDependencies) {
+            final Dependency dependency = effective.clone();
+            final Dependency pom = declared.remove(dependency.getManagementKey());
+            if (pom != null && pom.getVersion() != null) {
+                final String version = MojoHelper.getVersion(properties, pom.getVersion());
+                if (version != null) {
+                    dependency.setVersion(version);
+                }
+            }
+            dependencies.add(dependency);
+        }
+        for (final Dependency pom : declared.values()) {
+            final Dependency dependency = pom.clone();
+            final String version = pom.getVersion();
+            dependency.setVersion(version == null ? null : MojoHelper.getVersion(properties, version));
+            dependencies.add(dependency);
+        }
+        for (final Dependency dependency : dependencies) {
+            checkState(dependency.getVersion() != null && !dependency.getVersion().isEmpty(),
+                    "Version of %s cannot be determined", dependency.getManagementKey());
+        }
+        return dependencies;
+    }
+
+}
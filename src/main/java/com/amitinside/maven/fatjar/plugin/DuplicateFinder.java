@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimaps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Finds JARs with identical content and classes contained in more than one
+ * JAR. Classes are compared by the size and CRC-32 recorded in the central
+ * directory of the JARs which does not require to read their content.
+ */
+public final class DuplicateFinder {
+
+    private static final String CLASS_EXTENSION = ".class";
+    private static final String MODULE_INFO = "module-info.class";
+
+    private DuplicateFinder() {
+        // use factory method
+    }
+
+    public static DuplicateFinder newInstance() {
+        return new DuplicateFinder();
+    }
+
+    /**
+     * Removes the JARs whose content is identical to a JAR earlier on the
+     * classpath
+     *
+     * @param classpath the JARs to deduplicate
+     * @return the JARs with distinct content in classpath order
+     * @throws IOException if any of the JARs cannot be read
+     */
+    public List<File> deduplicate(final List<File> classpath) throws IOException {
+        checkNotNull(classpath, "Classpath cannot be null");
+
+        // JARs of different sizes cannot be identical, so only these are hashed
+        final ListMultimap<Long, File> bySize = ArrayListMultimap.create();
+        for (final File jar : classpath) {
+            bySize.put(jar.length(), jar);
+        }
+        final List<File> unique = Lists.newArrayList();
+        final Map<String, File> byHash = Maps.newHashMap();
+        for (final File jar : classpath) {
+            if (bySize.get(jar.length()).size() == 1) {
+                unique.add(jar);
+                continue;
+            }
+            final String hash = Files.asByteSource(jar).hash(Hashing.sha256()).toString();
+            if (byHash.putIfAbsent(hash, jar) == null) {
+                unique.add(jar);
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * Finds the classes contained in more than one JAR of the classpath
+     *
+     * @param classpath the JARs to search
+     * @return the duplicate classes
+     * @throws IOException if any of the JARs cannot be read
+     */
+    public Duplicates findDuplicateClasses(final List<File> classpath) throws IOException {
+        checkNotNull(classpath, "Classpath cannot be null");
+
+        final ListMultimap<String, ClassEntry> classes = ArrayListMultimap.create();
+        for (final File jar : classpath) {
+            try (ZipFile zip = new ZipFile(jar)) {
+                for (final Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                    final ZipEntry entry = e.nextElement();
+                    final String name = entry.getName();
+                    if (entry.isDirectory() || !name.endsWith(CLASS_EXTENSION) || name.startsWith("META-INF/")
+                            || name.endsWith(MODULE_INFO)) {
+                        continue;
+                    }
+                    classes.put(name, new ClassEntry(jar, entry.getSize(), entry.getCrc()));
+                }
+            }
+        }
+        final SortedMap<String, List<File>> identical = Maps.newTreeMap();
+        final SortedMap<String, List<File>> conflicting = Maps.newTreeMap();
+        for (final Map.Entry<String, List<ClassEntry>> clazz : Multimaps.asMap(classes).entrySet()) {
+            final List<ClassEntry> entries = clazz.getValue();
+            if (entries.size() < 2) {
+                continue;
+            }
+            final ClassEntry first = entries.get(0);
+            final boolean same = entries.stream().allMatch(c -> c.size == first.size && c.crc == first.crc);
+            final List<File> jars = Lists.newArrayList();
+            entries.forEach(c -> jars.add(c.jar));
+            (same ? identical : conflicting).put(clazz.getKey(), jars);
+        }
+        return new Duplicates(ImmutableSortedMap.copyOfSorted(identical), ImmutableSortedMap.copyOfSorted(conflicting));
+    }
+
+    /**
+     * The classes contained in more than one JAR mapped to these JARs in
+     * classpath order
+     */
+    public static final class Duplicates {
+
+        private final SortedMap<String, List<File>> identical;
+        private final SortedMap<String, List<File>> conflicting;
+
+        private Duplicates(final SortedMap<String, List<File>> identical,
+                final SortedMap<String, List<File>> conflicting) {
+            this.identical = identical;
+            this.conflicting = conflicting;
+        }
+
+        /**
+         * @return the duplicate classes with the same content in all JARs
+         */
+        public SortedMap<String, List<File>> getIdentical() {
+            return identical;
+        }
+
+        /**
+         * @return the duplicate classes whose content differs, of which only
+         *         the first one on the classpath ends up in the bundle
+         */
+        public SortedMap<String, List<File>> getConflicting() {
+            return conflicting;
+        }
+    }
+
+    private static final class ClassEntry {
+
+        private final File jar;
+        private final long size;
+        private final long crc;
+
+        private ClassEntry(final File jar, final long size, final long crc) {
+            this.jar = jar;
+            this.size = size;
+            this.crc = crc;
+        }
+    }
+
+}
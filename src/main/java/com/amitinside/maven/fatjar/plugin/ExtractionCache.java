@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.*;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.util.stream.Collectors.toList;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+
+/**
+ * Persistent cache of extracted archive entries keyed by the SHA-256 of the
+ * archive and the extraction settings. Entries are evicted in least recently
+ * used order as soon as the cache exceeds its maximum size. The cache can be
+ * shared by concurrent builds, so entries used recently by any build are kept
+ * as they might still be read.
+ */
+public final class ExtractionCache {
+
+    private static final String INDEX_FILE = ".index";
+    private static final String STAGING_PREFIX = ".staging-";
+    private static final long IN_USE_PERIOD = TimeUnit.HOURS.toMillis(1);
+
+    private final File cacheDirectory;
+    private final long maximumSize;
+    private final String settings;
+    private final Set<String> usedKeys = Sets.newConcurrentHashSet();
+
+    private ExtractionCache(final File cacheDirectory, final long maximumSize, final String settings) {
+        checkNotNull(cacheDirectory, "Cache directory cannot be null");
+        checkNotNull(settings, "Extraction settings cannot be null");
+        checkArgument(maximumSize > 0, "Maximum cache size must be positive");
+
+        this.cacheDirectory = cacheDirectory;
+        this.maximumSize = maximumSize;
+        this.settings = settings;
+    }
+
+    /**
+     * Creates a new cache instance
+     *
+     * @param cacheDirectory the root directory of the cache
+     * @param maximumSize the maximum size of all cached entries in bytes
+     * @param settings the extraction settings which influence the extracted
+     *            content
+     * @return the cache instance
+     */
+    public static ExtractionCache newInstance(final File cacheDirectory, final long maximumSize,
+            final String settings) {
+        return new ExtractionCache(cacheDirectory, maximumSize, settings);
+    }
+
+    public String key(final File archive) throws IOException {
+        final String archiveHash = com.google.common.io.Files.asByteSource(archive).hash(Hashing.sha256()).toString();
+        return Hashing.sha256().hashString(archiveHash + settings, UTF_8).toString();
+    }
+
+    /**
+     * Returns the cached files for the specified key
+     *
+     * @param key the cache key
+     * @return the cached files or {@code null} if there is no such entry or
+     *         the entry is incomplete, in which case it is removed
+     * @throws IOException if the entry cannot be read
+     */
+    public List<File> get(final String key) throws IOException {
+        final Path entry = cacheDirectory.toPath().resolve(key);
+        final Path index = entry.resolve(INDEX_FILE);
+        if (!Files.isRegularFile(index)) {
+            return null;
+        }
+        usedKeys.add(key);
+        Files.setLastModifiedTime(index, FileTime.fromMillis(System.currentTimeMillis()));
+        //@formatter:off
+        final List<File> files = Files.readAllLines(index, UTF_8).stream()
+                                      .skip(1)
+                                      .map(entry::resolve)
+                                      .map(Path::toFile)
+                                      .collect(toList());
+        //@formatter:on
+        if (files.stream().allMatch(File::isFile)) {
+            return files;
+        }
+        // the files have been removed externally, so the entry is stored again
+        Files.deleteIfExists(index);
+        FileUtils.deleteQuietly(entry.toFile());
+        return null;
+    }
+
+    /**
+     * @param key the cache key
+     * @return the directory containing the files of the entry
+     */
+    public File getDirectory(final String key) {
+        return new File(cacheDirectory, key);
+    }
+
+    public File newStagingDirectory() throws IOException {
+        final File staging = new File(cacheDirectory, STAGING_PREFIX + UUID.randomUUID());
+        FileUtils.forceMkdir(staging);
+        return staging;
+    }
+
+    /**
+     * Moves the extracted files from the staging directory into the cache.
+     * All other files in the staging directory are discarded.
+     *
+     * @param key the cache key
+     * @param staging the staging directory returned by
+     *            {@link #newStagingDirectory()}
+     * @param files the extracted files residing in the staging directory
+     * @return the files relocated to the cache entry
+     * @throws IOException if the entry cannot be stored
+     */
+    public List<File> put(final String key, final File staging, final List<File> files) throws IOException {
+        final Path stagingRoot = staging.toPath();
+        final Set<Path> included = Sets.newHashSet();
+        final List<String> index = Lists.newArrayList();
+        long size = 0;
+        for (final File file : files) {
+            included.add(file.toPath().toAbsolutePath().normalize());
+            index.add(stagingRoot.relativize(file.toPath()).toString());
+            size += file.length();
+        }
+        // the size of the entry has to match the size recorded in its index
+        try (Stream<Path> paths = Files.walk(stagingRoot)) {
+            for (final Path path : (Iterable<Path>) paths::iterator) {
+                if (Files.isRegularFile(path) && !included.contains(path.toAbsolutePath().normalize())) {
+                    Files.delete(path);
+                }
+            }
+        }
+        index.add(0, String.valueOf(size));
+        Files.write(stagingRoot.resolve(INDEX_FILE), index, UTF_8);
+
+        final Path entry = cacheDirectory.toPath().resolve(key);
+        try {
+            Files.move(stagingRoot, entry, ATOMIC_MOVE);
+        } catch (final IOException e) {
+            if (!Files.isDirectory(entry)) {
+                throw e;
+            }
+            // stored concurrently by another build or an incomplete entry
+            // which has been removed while reading it
+            if (get(key) == null) {
+                Files.move(stagingRoot, entry, ATOMIC_MOVE);
+            } else {
+                FileUtils.deleteDirectory(staging);
+            }
+        }
+        final List<File> cached = get(key);
+        if (cached == null) {
+            throw new IOException("Cache entry " + key + " is incomplete");
+        }
+        return cached;
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache fits its maximum
+     * size as well as the staging directories abandoned by crashed builds.
+     * Entries used by this instance or used by any build within the last hour
+     * are never evicted.
+     *
+     * @throws IOException if the cache directory cannot be read
+     */
+    public void evict() throws IOException {
+        final long inUseSince = System.currentTimeMillis() - IN_USE_PERIOD;
+        final List<Path> indexes;
+        final List<Path> abandoned;
+        try (Stream<Path> entries = Files.list(cacheDirectory.toPath())) {
+            final List<Path> all = entries.collect(toList());
+            //@formatter:off
+            indexes = all.stream()
+                         .filter(e -> !e.getFileName().toString().startsWith(STAGING_PREFIX))
+                         .map(e -> e.resolve(INDEX_FILE))
+                         .filter(Files::isRegularFile)
+                         .sorted(Comparator.comparingLong(ExtractionCache::lastModified))
+                         .collect(toList());
+            abandoned = all.stream()
+                           .filter(e -> e.getFileName().toString().startsWith(STAGING_PREFIX))
+                           .filter(e -> lastModified(e) < inUseSince)
+                           .collect(toList());
+            //@formatter:on
+        }
+        for (final Path staging : abandoned) {
+            FileUtils.deleteQuietly(staging.toFile());
+        }
+        long totalSize = 0;
+        for (final Path index : indexes) {
+            totalSize += size(index);
+        }
+        for (final Path index : indexes) {
+            if (totalSize <= maximumSize) {
+                break;
+            }
+            final Path entry = index.getParent();
+            // concurrent builds touch the index of every entry they use
+            if (usedKeys.contains(entry.getFileName().toString()) || lastModified(index) >= inUseSince) {
+                continue;
+            }
+            totalSize -= size(index);
+            FileUtils.deleteDirectory(entry.toFile());
+        }
+    }
+
+    private static long lastModified(final Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (final IOException e) {
+            return 0;
+        }
+    }
+
+    private static long size(final Path index) throws IOException {
+        try (Stream<String> lines = Files.lines(index, UTF_8)) {
+            return lines.findFirst().map(Long::parseLong).orElse(0L);
+        }
+    }
+
+}
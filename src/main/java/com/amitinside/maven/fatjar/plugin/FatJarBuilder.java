@@ -13,8 +13,12 @@ import static aQute.bnd.osgi.Constants.*;
 import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
 import static com.google.common.base.Charsets.UTF_8;
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static java.io.File.separator;
+import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -24,118 +28,608 @@ import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
 import java.util.stream.Stream;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 
+import com.amitinside.maven.fatjar.plugin.ClasspathAnalyzer.Analysis;
 import com.amitinside.maven.fatjar.plugin.Configurer.Params;
+import com.amitinside.maven.fatjar.plugin.DuplicateFinder.Duplicates;
+import com.amitinside.maven.fatjar.plugin.util.ClassFileHelper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import aQute.bnd.osgi.Builder;
 import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.FileResource;
 import aQute.bnd.osgi.Jar;
 import aQute.bnd.osgi.Processor;
-import net.lingala.zip4j.core.ZipFile;
-import net.lingala.zip4j.exception.ZipException;
+import aQute.bnd.version.Version;
 
 public final class FatJarBuilder {
 
+    private static final String EXTRACTION_DIRECTORY = "extracted";
+    private static final String MINIMIZATION_REPORT_EXTENSION = ".minimization.txt";
+    private static final String COMPOSITION_REPORT_EXTENSION = ".composition.json";
+    private static final String EMBEDDED_DIRECTORY = "lib/";
+    private static final String DEFAULT_EXPORT_VERSION = "1.0.0";
+    private static final String UNRESOLVABLE_REQUIREMENT = "osgi.unresolvable; "
+            + "filter:=\"(&(must.not.resolve=*)(!(must.not.resolve=*)))\"";
+
     private final File sourceLocation;
-    private final String bndFile;
-    private final String bsn;
-    private final String version;
+    private final List<Bundle> bundles;
     private final String[] extensionsToUnarchive;
     private final String targetLocation;
     private final MavenProject mavenProject;
     private final boolean shouldBundleResolve;
-    private String fileName;
-
-    private FatJarBuilder(final MavenProject mavenProject) {
-        bsn = Configurer.INSTANCE.getAsString(BUNDLE_SYMBOLIC_NAME);
-        version = Configurer.INSTANCE.getAsString(Params.BUNDLE_VERSION);
-        fileName = Configurer.INSTANCE.getAsString(TARGET_FILENAME);
-        sourceLocation = (File) Configurer.INSTANCE.get(SOURCE_DIRECTORY);
-        extensionsToUnarchive = (String[]) Configurer.INSTANCE.get(EXTENSION_TO_UNARCHIVE);
-        targetLocation = Configurer.INSTANCE.getAsString(Params.TARGET_DIRECTORY);
-        bndFile = sourceLocation + separator + "temp.bnd";
+    private final boolean reproducible;
+    private final boolean lowMemory;
+    private final boolean minimize;
+    private final ClasspathAnalyzer analyzer;
+    private final DuplicateFinder duplicateFinder;
+    private final boolean failOnClassConflicts;
+    private final boolean embedDependencies;
+    private final boolean incremental;
+    private final StartupOptimizer startupOptimizer;
+    private final boolean writeCompositionReport;
+    private final long bundleSizeBudget;
+    private final long bundleEntryBudget;
+    private final long dependencySizeBudget;
+    private final Log log;
+    private final BuildMetrics metrics;
+    private final List<File> repositoryArtefacts;
+    private final Configurer configurer;
+    private List<File> extractedFiles;
+    private Map<File, String> extractedOrigins;
+
+    @SuppressWarnings("unchecked")
+    private FatJarBuilder(final Configurer configurer, final MavenProject mavenProject,
+            final List<File> repositoryArtefacts, final Log log) {
+        bundles = (List<Bundle>) configurer.get(BUNDLES);
+        sourceLocation = (File) configurer.get(SOURCE_DIRECTORY);
+        extensionsToUnarchive = (String[]) configurer.get(EXTENSION_TO_UNARCHIVE);
+        targetLocation = configurer.getAsString(Params.TARGET_DIRECTORY);
         this.mavenProject = mavenProject;
-        final String shouldResolve = Configurer.INSTANCE.getAsString(BUNDLE_RESOLVABLE);
+        this.repositoryArtefacts = repositoryArtefacts;
+        this.configurer = configurer;
+        final String shouldResolve = configurer.getAsString(BUNDLE_RESOLVABLE);
         shouldBundleResolve = Boolean.valueOf(shouldResolve);
+        reproducible = Boolean.valueOf(configurer.getAsString(REPRODUCIBLE_OUTPUT));
+        lowMemory = Boolean.valueOf(configurer.getAsString(LOW_MEMORY));
+        minimize = Boolean.valueOf(configurer.getAsString(MINIMIZE));
+        final boolean useAnalysisIndex = Boolean.valueOf(configurer.getAsString(USE_ANALYSIS_INDEX));
+        analyzer = useAnalysisIndex ? ClasspathAnalyzer.newInstance(configurer) : null;
+        duplicateFinder = DuplicateFinder.newInstance();
+        failOnClassConflicts = Boolean.valueOf(configurer.getAsString(FAIL_ON_CLASS_CONFLICTS));
+        embedDependencies = Boolean.valueOf(configurer.getAsString(EMBED_DEPENDENCIES));
+        incremental = Boolean.valueOf(configurer.getAsString(INCREMENTAL));
+        startupOptimizer = StartupOptimizer.newInstance(configurer);
+        writeCompositionReport = Boolean.valueOf(configurer.getAsString(WRITE_COMPOSITION_REPORT));
+        bundleSizeBudget = Long.parseLong(configurer.getAsString(BUNDLE_SIZE_BUDGET));
+        bundleEntryBudget = Long.parseLong(configurer.getAsString(BUNDLE_ENTRY_BUDGET));
+        dependencySizeBudget = Long.parseLong(configurer.getAsString(DEPENDENCY_SIZE_BUDGET));
+        this.log = log;
+        metrics = BuildMetrics.of(configurer);
 
-        checkArgument(!bsn.trim().isEmpty(), "Bundle Symbolic Name cannot be empty");
+        checkArgument(bundles != null && !bundles.isEmpty(), "Bundles cannot be empty");
         checkArgument(!targetLocation.trim().isEmpty(), "Target Directory cannot be empty");
+        checkNotNull(repositoryArtefacts, "Repository artefacts cannot be null");
+        checkNotNull(log, "Log cannot be null");
+        checkArgument(bundleSizeBudget >= 0 && bundleEntryBudget >= 0 && dependencySizeBudget >= 0,
+                "Budgets cannot be negative");
     }
 
-    public static FatJarBuilder newInstance(final MavenProject mavenProject) {
-        return new FatJarBuilder(mavenProject);
+    /**
+     * Creates a new builder
+     *
+     * @param configurer the configuration of the current execution
+     * @param mavenProject the project to build the fat JAR for
+     * @param repositoryArtefacts the artefacts to add to the classpath directly
+     *            from their repository location in addition to the staged ones
+     * @param log the log to report warnings to
+     * @return the builder instance
+     */
+    public static FatJarBuilder newInstance(final Configurer configurer, final MavenProject mavenProject,
+            final List<File> repositoryArtefacts, final Log log) {
+        return new FatJarBuilder(configurer, mavenProject, repositoryArtefacts, log);
     }
 
     public void build() throws Exception {
         extractArchives();
-        buildBndConfigFile();
-        executeBnd();
+        buildBundles(bundles, collectClasspath());
         FileUtils.deleteDirectory(sourceLocation);
     }
 
-    private void extractArchives() throws IOException {
-        try (Stream<Path> paths = Files.walk(sourceLocation.toPath())) {
+    /**
+     * Builds all bundles from the dependencies resolved, staged and extracted
+     * by the specified pipeline. The JARs are analyzed while the remaining
+     * dependencies are still being resolved and extracted.
+     *
+     * @param pipeline the pipeline providing the dependencies
+     * @throws Exception if any of the dependencies or bundles cannot be built
+     */
+    public void build(final BuildPipeline pipeline) throws Exception {
+        checkNotNull(pipeline, "Pipeline cannot be null");
+
+        final BuildPipeline.Result result = pipeline.run(new File(sourceLocation, EXTRACTION_DIRECTORY),
+                this::analyzeAhead);
+        extractedFiles = result.getExtractedFiles();
+        extractedOrigins = result.getOrigins();
+        buildBundles(bundles, deduplicate(result.getClasspath()));
+        FileUtils.deleteDirectory(sourceLocation);
+    }
+
+    private void analyzeAhead(final File jar) throws IOException {
+        if (analyzer != null) {
+            // the analysis of the classpath of every bundle reuses the one of its JARs
+            analyzer.prepare(jar);
+        }
+    }
+
+    /**
+     * Builds the bundles affected by the specified changed artefacts. Unlike
+     * {@link #build()}, the staged and extracted artefacts are kept for
+     * subsequent updates. The first update builds all bundles.
+     *
+     * @param changed the changed artefacts which have already been staged
+     * @return the rebuilt bundles
+     * @throws Exception if any of the bundles cannot be built
+     */
+    public List<Bundle> update(final Collection<File> changed) throws Exception {
+        checkNotNull(changed, "Changed artefacts cannot be null");
+
+        final List<Bundle> affected;
+        if (extractedFiles == null || changed.stream().anyMatch(this::isArchive)) {
+            // the JARs contained in an archive are only known after extracting it
+            FileUtils.deleteDirectory(new File(sourceLocation, EXTRACTION_DIRECTORY));
+            extractArchives();
+            affected = bundles;
+        } else {
+            //@formatter:off
+            affected = bundles.stream()
+                              .filter(b -> changed.stream()
+                                                  .filter(f -> f.getName().endsWith(".jar"))
+                                                  .anyMatch(b::accepts))
+                              .collect(toList());
+            //@formatter:on
+        }
+        if (!affected.isEmpty()) {
+            buildBundles(affected, collectClasspath());
+        }
+        return affected;
+    }
+
+    @VisibleForTesting
+    void extractArchives() throws IOException {
+        final List<File> archives;
+        try (Stream<Path> paths = Files.list(sourceLocation.toPath())) {
             //@formatter:off
-            paths.filter(Files::isRegularFile)
-                 .map(Path::toFile)
-                 .filter(f -> Arrays.stream(extensionsToUnarchive)
-                                    .anyMatch(e -> f.getName().endsWith(e)))
-                 .forEach(this::extract);
+            archives = Stream.concat(paths.filter(Files::isRegularFile)
+                                          .map(Path::toFile),
+                                     repositoryArtefacts.stream())
+                             .filter(this::isArchive)
+                             .collect(toList());
            //@formatter:on
         }
+        final File extractionDirectory = new File(sourceLocation, EXTRACTION_DIRECTORY);
+        try (BuildMetrics.Phase phase = metrics.start("extraction")) {
+            final ArchiveExtractor extractor = ArchiveExtractor.newInstance(configurer);
+            extractedFiles = extractor.extract(archives, extractionDirectory);
+            extractedOrigins = extractor.getOrigins();
+            phase.addFilesRead(archives).addEntries(extractedFiles.size());
+            phase.addBytesWritten(extractedFiles.stream().mapToLong(File::length).sum());
+        }
+    }
+
+    private List<File> collectClasspath() throws IOException {
+        final List<File> classpath;
+        // the staged artefacts are flat, the extracted ones are already known
+        try (Stream<Path> paths = Files.list(sourceLocation.toPath())) {
+            //@formatter:off
+            classpath = Stream.of(paths.filter(Files::isRegularFile).map(Path::toFile),
+                             repositoryArtefacts.stream(),
+                             extractedFiles.stream())
+                         .flatMap(identity())
+                         .filter(f -> f.getName().endsWith(".jar"))
+                         .collect(toList());
+            //@formatter:on
+        }
+        return deduplicate(classpath);
+    }
+
+    private List<File> deduplicate(final List<File> classpath) throws IOException {
+        // the same JAR is often shipped by several distributions
+        final List<File> unique;
+        try (BuildMetrics.Phase phase = metrics.start("deduplication")) {
+            unique = duplicateFinder.deduplicate(classpath);
+            phase.addFilesRead(classpath);
+        }
+        if (unique.size() < classpath.size()) {
+            log.info("Removed " + (classpath.size() - unique.size()) + " JARs with identical content");
+        }
+        return unique;
+    }
+
+    private boolean isArchive(final File file) {
+        return ArchiveExtractor.isArchive(file.getName(), extensionsToUnarchive);
     }
 
-    private void extract(final File file) {
+    private void buildBundles(final List<Bundle> selected, final List<File> classpath) throws Exception {
+        if (selected.size() == 1 || lowMemory) {
+            // the writer memory of only one bundle is held at a time
+            for (final Bundle bundle : selected) {
+                buildBundle(bundle, bundles.indexOf(bundle), classpath);
+            }
+            return;
+        }
+        final int poolSize = Math.min(selected.size(), Runtime.getRuntime().availableProcessors());
+        //@formatter:off
+        final ExecutorService executor = Executors.newFixedThreadPool(poolSize,
+                                                new ThreadFactoryBuilder()
+                                                        .setNameFormat("fatjar-builder-%d")
+                                                        .setDaemon(true)
+                                                        .build());
+        //@formatter:on
         try {
-            final ZipFile zipFile = new ZipFile(file);
-            zipFile.extractAll(sourceLocation.getPath());
-        } catch (final ZipException e) {
-            // suppress due to the usage in stream
+            final List<Future<Void>> futures = Lists.newArrayList();
+            for (final Bundle bundle : selected) {
+                final int index = bundles.indexOf(bundle);
+                futures.add(executor.submit(() -> {
+                    buildBundle(bundle, index, classpath);
+                    return null;
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void buildBundle(final Bundle bundle, final int index, final List<File> classpath) throws Exception {
+        //@formatter:off
+        List<File> bundleClasspath = classpath.stream()
+                                              .filter(bundle::accepts)
+                                              .collect(toList());
+        //@formatter:on
+        reportDuplicateClasses(bundle, bundleClasspath);
+        // the composition is attributed to the JARs before minimizing them
+        final List<File> sourceClasspath = bundleClasspath;
+        if (minimize) {
+            final File minimizedJar = new File(sourceLocation, "minimized-" + index + ".jar");
+            final File report = new File(targetLocation, bundle.getTargetFilename() + MINIMIZATION_REPORT_EXTENSION);
+            try (BuildMetrics.Phase phase = metrics.start("minimization", bundle.getBundleSymbolicName())) {
+                Minimizer.newInstance(configurer).minimize(bundle, bundleClasspath, minimizedJar, report);
+                phase.addFilesRead(bundleClasspath).addBytesWritten(minimizedJar.length());
+            }
+            bundleClasspath = Collections.singletonList(minimizedJar);
+        }
+        if (embedDependencies) {
+            buildEmbeddedBundle(bundle, bundleClasspath);
+            return;
+        }
+        if (lowMemory) {
+            buildStreamingBundle(bundle, bundleClasspath);
+        } else {
+            buildBndBundle(bundle, index, bundleClasspath);
+        }
+        if (startupOptimizer.isEnabled()) {
+            optimizeStartup(bundle);
+        }
+        final File target = new File(targetLocation + separator + bundle.getTargetFilename());
+        reportComposition(bundle, target, () -> CompositionReport.ofClasspath(bundle.getBundleSymbolicName(),
+                target, sourceClasspath, extractedOrigins));
+    }
+
+    private void buildBndBundle(final Bundle bundle, final int index, final List<File> bundleClasspath)
+            throws Exception {
+        final File bndFile = new File(sourceLocation, "temp-" + index + ".bnd");
+        buildBndConfigFile(bundle, bundleClasspath, bndFile);
+        executeBnd(bundle, bndFile);
+    }
+
+    /**
+     * Writes the composition report of the built bundle and fails if the
+     * bundle exceeds any of the budgets. The report is written beforehand to
+     * tell why, the bundle is deleted so it cannot be picked up by subsequent
+     * goals.
+     */
+    private void reportComposition(final Bundle bundle, final File target,
+            final Callable<CompositionReport> composition) throws Exception {
+        if (!writeCompositionReport && bundleSizeBudget == 0 && bundleEntryBudget == 0
+                && dependencySizeBudget == 0) {
+            return;
+        }
+        final String bsn = bundle.getBundleSymbolicName();
+        final CompositionReport report;
+        try (BuildMetrics.Phase phase = metrics.start("composition-report", bsn)) {
+            report = composition.call();
+            if (writeCompositionReport) {
+                final File reportFile = new File(targetLocation,
+                        bundle.getTargetFilename() + COMPOSITION_REPORT_EXTENSION);
+                report.write(reportFile);
+                phase.addBytesWritten(reportFile.length());
+            }
+            phase.addFiles(1);
+        }
+        final List<String> violations = report.checkBudgets(bundleSizeBudget, bundleEntryBudget,
+                dependencySizeBudget);
+        violations.forEach(log::error);
+        if (!violations.isEmpty()) {
+            Files.deleteIfExists(target.toPath());
+        }
+        checkState(violations.isEmpty(), "%s budgets exceeded by %s", violations.size(), bsn);
+    }
+
+    private void optimizeStartup(final Bundle bundle) throws Exception {
+        final File target = new File(targetLocation + separator + bundle.getTargetFilename());
+        try (BuildMetrics.Phase phase = metrics.start("startup-optimization", bundle.getBundleSymbolicName())) {
+            final List<String> classes = startupOptimizer.optimize(bundle, target, sourceLocation);
+            phase.addFiles(1).addEntries(classes.size()).addBytesWritten(target.length());
         }
     }
 
-    private void buildBndConfigFile() throws IOException {
-        try (Stream<Path> paths = Files.walk(sourceLocation.toPath())) {
+    private void reportDuplicateClasses(final Bundle bundle, final List<File> classpath) throws IOException {
+        final String bsn = bundle.getBundleSymbolicName();
+        final Duplicates duplicates;
+        try (BuildMetrics.Phase phase = metrics.start("duplicate-classes", bsn)) {
+            duplicates = duplicateFinder.findDuplicateClasses(classpath);
+            phase.addFilesRead(classpath);
+        }
+        if (!duplicates.getIdentical().isEmpty()) {
+            log.info(duplicates.getIdentical().size() + " identical classes in more than one JAR of " + bsn);
+        }
+        for (final Map.Entry<String, List<File>> conflict : duplicates.getConflicting().entrySet()) {
             //@formatter:off
-            final String classpath = paths.filter(Files::isRegularFile)
-                                    .map(Path::toFile)
-                                    .filter(f -> f.getName().endsWith(".jar"))
-                                    .map(File::getPath)
-                                    .collect(joining( ", " ));
+            log.warn("Conflicting class " + conflict.getKey() + " in " + bsn + " from "
+                    + conflict.getValue().stream().map(File::getName).collect(joining(", "))
+                    + ", using the first one");
             //@formatter:on
-            final StringBuilder contentBuilder = new StringBuilder();
-            contentBuilder.append("Bundle-SymbolicName: ");
-            contentBuilder.append(bsn);
-            contentBuilder.append(System.lineSeparator());
-            contentBuilder.append("ver: 1.0.0");
+        }
+        checkState(!failOnClassConflicts || duplicates.getConflicting().isEmpty(),
+                "%s conflicting classes in %s", duplicates.getConflicting().size(), bsn);
+    }
+
+    @VisibleForTesting
+    void buildBndConfigFile(final Bundle bundle, final List<File> classpath, final File bndFile)
+            throws IOException {
+        try (BuildMetrics.Phase phase = metrics.start("bnd-configuration", bundle.getBundleSymbolicName())) {
+            final String content = buildBndConfiguration(bundle, classpath);
+            try (final Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(bndFile), UTF_8))) {
+                writer.write(content);
+            }
+            phase.addFiles(classpath.size()).addBytesWritten(bndFile.length());
+        }
+    }
+
+    private String buildBndConfiguration(final Bundle bundle, final List<File> classpath) throws IOException {
+        final StringBuilder contentBuilder = new StringBuilder();
+        contentBuilder.append("Bundle-SymbolicName: ");
+        contentBuilder.append(bundle.getBundleSymbolicName());
+        contentBuilder.append(System.lineSeparator());
+        contentBuilder.append("ver: " + DEFAULT_EXPORT_VERSION);
+        contentBuilder.append(System.lineSeparator());
+        contentBuilder.append("-classpath: ");
+        contentBuilder.append(classpath.stream().map(File::getPath).collect(joining(", ")));
+        contentBuilder.append(System.lineSeparator());
+        if (analyzer == null) {
+            contentBuilder.append("Export-Package: *;version=${ver}");
             contentBuilder.append(System.lineSeparator());
-            contentBuilder.append("-classpath: ");
-            contentBuilder.append(classpath);
+        } else {
+            final Analysis analysis;
+            try (BuildMetrics.Phase phase = metrics.start("classpath-analysis", bundle.getBundleSymbolicName())) {
+                analysis = analyzer.analyze(classpath);
+                phase.addFiles(classpath.size()).addEntries(analysis.getExports().size());
+            }
+            appendAnalyzedHeaders(bundle, contentBuilder, analysis);
+        }
+        if (!shouldBundleResolve) {
+            contentBuilder.append("Require-Capability: ");
+            contentBuilder.append(UNRESOLVABLE_REQUIREMENT);
+        }
+        return contentBuilder.toString();
+    }
+
+    private void appendAnalyzedHeaders(final Bundle bundle, final StringBuilder contentBuilder,
+            final Analysis analysis) {
+        for (final Map.Entry<String, List<File>> split : analysis.getSplitPackages().entrySet()) {
+            //@formatter:off
+            log.warn("Split package " + split.getKey() + " in " + bundle.getBundleSymbolicName() + " from "
+                    + split.getValue().stream().map(File::getName).collect(joining(", ")));
+            //@formatter:on
+        }
+        final List<String> exports = exportClauses(analysis, "${ver}", true);
+        if (!exports.isEmpty()) {
+            contentBuilder.append("Export-Package: ");
+            contentBuilder.append(String.join(",", exports));
             contentBuilder.append(System.lineSeparator());
-            contentBuilder.append("Export-Package: *;version=${ver}");
+        }
+        if (!analysis.getImports().isEmpty()) {
+            contentBuilder.append("Import-Package: ");
+            // bnd derives the ranges of the exported packages from their exports
+            contentBuilder.append(String.join(",", importClauses(analysis, false)));
             contentBuilder.append(System.lineSeparator());
-            if (!shouldBundleResolve) {
-                contentBuilder.append(
-                        "Require-Capability: osgi.unresolvable; filter:=\"(&(must.not.resolve=*)(!(must.not.resolve=*)))\"");
+        }
+        // bnd still parses every class it copies, but does not derive the
+        // uses directives the analysis does not provide either
+        contentBuilder.append("-nouses: true");
+        contentBuilder.append(System.lineSeparator());
+    }
+
+    private static List<String> exportClauses(final Analysis analysis, final String defaultVersion,
+            final boolean mergeSplitPackages) {
+        final List<String> exports = Lists.newArrayList();
+        for (final Map.Entry<String, String> export : analysis.getExports().entrySet()) {
+            final String packageName = export.getKey();
+            final String version = export.getValue();
+            final StringBuilder clause = new StringBuilder(packageName);
+            clause.append(";version=");
+            clause.append(version == null ? defaultVersion : '"' + version + '"');
+            if (mergeSplitPackages && analysis.getSplitPackages().containsKey(packageName)) {
+                // the first JAR on the classpath wins as with the wildcard export
+                clause.append(";-split-package:=merge-first");
+            }
+            exports.add(clause.toString());
+        }
+        return exports;
+    }
+
+    /**
+     * Imports the exported packages like bnd does, so they can be substituted
+     * by the exports of other bundles
+     */
+    private static List<String> importClauses(final Analysis analysis, final boolean withExportRanges) {
+        final List<String> imports = Lists.newArrayList();
+        for (final String packageName : analysis.getImports()) {
+            if (!withExportRanges || !analysis.getExports().containsKey(packageName)) {
+                imports.add(packageName);
+                continue;
             }
+            final String exported = analysis.getExports().get(packageName);
+            final String version = exported == null ? DEFAULT_EXPORT_VERSION : exported;
+            imports.add(packageName + ";version=\"" + importRange(version) + '"');
+        }
+        return imports;
+    }
 
-            try (final Writer writer = new BufferedWriter(
-                    new OutputStreamWriter(new FileOutputStream(bndFile), UTF_8))) {
-                writer.write(contentBuilder.toString());
+    private static String importRange(final String version) {
+        try {
+            return "[" + version + "," + (new Version(version).getMajor() + 1) + ")";
+        } catch (final IllegalArgumentException e) {
+            // without an upper bound
+            return version;
+        }
+    }
+
+    /**
+     * Builds the bundle by storing the JARs of the classpath in the bundle
+     * instead of inlining their classes. The headers are generated from the
+     * classpath analysis, so neither bnd nor the writer process individual
+     * classes.
+     */
+    @VisibleForTesting
+    void buildEmbeddedBundle(final Bundle bundle, final List<File> classpath) throws Exception {
+        final String bsn = bundle.getBundleSymbolicName();
+        final Analysis analysis = analyzeClasspath(bundle, classpath);
+        try (Jar jar = new Jar(bsn)) {
+            final List<String> bundleClasspath = Lists.newArrayList(".");
+            final Map<String, File> embedded = Maps.newLinkedHashMap();
+            for (final File file : classpath) {
+                String name = EMBEDDED_DIRECTORY + file.getName();
+                // JARs from different distributions can have the same name
+                for (int i = 1; embedded.putIfAbsent(name, file) != null; i++) {
+                    name = EMBEDDED_DIRECTORY + i + '-' + file.getName();
+                }
+                jar.putResource(name, new FileResource(file));
+                bundleClasspath.add(name);
             }
+            final Manifest manifest = createManifest(bundle, analysis);
+            manifest.getMainAttributes().putValue(BUNDLE_CLASSPATH, String.join(",", bundleClasspath));
+            jar.setManifest(manifest);
+
+            final File target = new File(targetLocation + separator + bundle.getTargetFilename());
+            final PatchIndex index = incremental ? PatchIndex.ofFiles(embedded) : null;
+            try (BuildMetrics.Phase phase = metrics.start("jar-writing", bsn)) {
+                JarWriter.newInstance(configurer).write(jar, target, index);
+                phase.addFilesRead(classpath).addEntries(classpath.size()).addBytesWritten(target.length());
+            }
+            logReusedEntries(bsn, index, classpath.size());
+            reportComposition(bundle, target,
+                    () -> CompositionReport.ofEmbedded(bsn, target, embedded, extractedOrigins));
+        }
+    }
+
+    /**
+     * Builds the bundle by streaming the entries of the packages of the
+     * classpath into the bundle like bnd exports them, but without loading
+     * the classpath into bnd. The headers are generated from the classpath
+     * analysis, so only the metadata of every entry and the analysis of every
+     * JAR are held in memory, independent of the size of the bundle.
+     */
+    @VisibleForTesting
+    void buildStreamingBundle(final Bundle bundle, final List<File> classpath) throws Exception {
+        final String bsn = bundle.getBundleSymbolicName();
+        final Manifest manifest = createManifest(bundle, analyzeClasspath(bundle, classpath));
+        final File target = new File(targetLocation + separator + bundle.getTargetFilename());
+        final PatchIndex index = incremental ? PatchIndex.ofClasspath(classpath) : null;
+        try (BuildMetrics.Phase phase = metrics.start("jar-writing", bsn)) {
+            // only packages are exported, the first JAR on the classpath wins
+            JarWriter.newInstance(configurer).write(manifest, classpath,
+                    name -> ClassFileHelper.getPackageName(name) != null, target, index);
+            phase.addFilesRead(classpath).addBytesWritten(target.length());
+        }
+        logReusedEntries(bsn, index, classpath.size());
+    }
+
+    private Analysis analyzeClasspath(final Bundle bundle, final List<File> classpath) throws IOException {
+        final String bsn = bundle.getBundleSymbolicName();
+        final Analysis analysis;
+        try (BuildMetrics.Phase phase = metrics.start("classpath-analysis", bsn)) {
+            analysis = (analyzer == null ? ClasspathAnalyzer.newInstance(configurer) : analyzer).analyze(classpath);
+            phase.addFiles(classpath.size()).addEntries(analysis.getExports().size());
+        }
+        for (final String split : analysis.getSplitPackages().keySet()) {
+            // the first JAR on the classpath wins
+            log.warn("Split package " + split + " in " + bsn);
+        }
+        return analysis;
+    }
+
+    private Manifest createManifest(final Bundle bundle, final Analysis analysis) {
+        final String bsn = bundle.getBundleSymbolicName();
+        final Manifest manifest = new Manifest();
+        final Attributes main = manifest.getMainAttributes();
+        main.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        main.putValue(BUNDLE_MANIFESTVERSION, "2");
+        main.putValue(BUNDLE_SYMBOLICNAME, bsn);
+        main.putValue(BUNDLE_NAME, bsn);
+        main.putValue(Constants.BUNDLE_VERSION, bundle.getBundleVersion());
+        final List<String> exports = exportClauses(analysis, '"' + DEFAULT_EXPORT_VERSION + '"', false);
+        if (!exports.isEmpty()) {
+            main.putValue(EXPORT_PACKAGE, String.join(",", exports));
+        }
+        if (!analysis.getImports().isEmpty()) {
+            main.putValue(IMPORT_PACKAGE, String.join(",", importClauses(analysis, true)));
+        }
+        if (bundle.getMainClass() != null) {
+            main.putValue(MAIN_CLASS, bundle.getMainClass());
         }
+        if (!shouldBundleResolve) {
+            main.putValue(REQUIRE_CAPABILITY, UNRESOLVABLE_REQUIREMENT);
+        }
+        return manifest;
     }
 
-    private void executeBnd() throws Exception {
+    @VisibleForTesting
+    void executeBnd(final Bundle bundle, final File bndFile) throws Exception {
+        final String bsn = bundle.getBundleSymbolicName();
         final Properties beanProperties = new Properties();
         try (Builder builder = new Builder(new Processor(beanProperties, false))) {
-            loadProperties(builder, mavenProject);
+            loadProperties(builder, mavenProject, bndFile);
 
             if (builder.getProperty(BUNDLE_SYMBOLICNAME) == null) {
                 builder.setProperty(BUNDLE_SYMBOLICNAME, bsn);
@@ -144,31 +638,53 @@ public final class FatJarBuilder {
                 builder.setProperty(BUNDLE_NAME, bsn);
             }
             if (builder.getProperty(Constants.BUNDLE_VERSION) == null) {
-                builder.setProperty(Constants.BUNDLE_VERSION, version);
+                builder.setProperty(Constants.BUNDLE_VERSION, bundle.getBundleVersion());
             }
-            if (fileName.isEmpty()) {
-                final StringBuilder filenameBuilder = new StringBuilder();
-                filenameBuilder.append(bsn);
-                filenameBuilder.append('-');
-                filenameBuilder.append(version);
-                filenameBuilder.append(".jar");
-                fileName = filenameBuilder.toString();
+            if (bundle.getMainClass() != null && builder.getProperty(MAIN_CLASS) == null) {
+                builder.setProperty(MAIN_CLASS, bundle.getMainClass());
+            }
+            if (reproducible) {
+                // Bnd-LastModified, Created-By and Tool differ across builds
+                builder.setProperty(NOEXTRAHEADERS, "true");
             }
-
             final StringBuilder jarFile = new StringBuilder();
             jarFile.append(targetLocation);
             jarFile.append(separator);
-            jarFile.append(fileName);
+            jarFile.append(bundle.getTargetFilename());
+
+            final Jar bndJar;
+            try (BuildMetrics.Phase phase = metrics.start("bnd-analysis", bsn)) {
+                bndJar = builder.build();
+                phase.addFiles(builder.getClasspath().size()).addEntries(bndJar.getResources().size());
+            }
+            final File target = new File(jarFile.toString());
+            //@formatter:off
+            final PatchIndex index = incremental ? PatchIndex.ofClasspath(builder.getClasspath()
+                                                                                 .stream()
+                                                                                 .map(Jar::getSource)
+                                                                                 .filter(Objects::nonNull)
+                                                                                 .collect(toList()))
+                                                 : null;
+            //@formatter:on
+            try (BuildMetrics.Phase phase = metrics.start("jar-writing", bsn)) {
+                JarWriter.newInstance(configurer).write(bndJar, target, index);
+                phase.addFiles(1).addEntries(bndJar.getResources().size()).addBytesWritten(target.length());
+            }
+            logReusedEntries(bsn, index, bndJar.getResources().size());
+        }
+    }
 
-            final Jar bndJar = builder.build();
-            bndJar.write(jarFile.toString());
+    private void logReusedEntries(final String bsn, final PatchIndex index, final int entries) {
+        if (index != null && index.getReusedEntries() > 0) {
+            log.info("Copied " + index.getReusedEntries() + " of " + entries + " unchanged entries of " + bsn
+                    + " from the previous build");
         }
     }
 
-    private File loadProperties(final Builder builder, final MavenProject bndProject) throws IOException {
+    private File loadProperties(final Builder builder, final MavenProject bndProject, final File bndfile)
+            throws IOException {
         final File baseDir = bndProject.getBasedir();
         if (baseDir != null) {
-            final File bndfile = new File(bndFile);
             if (bndfile.isFile()) {
                 builder.setProperties(bndfile.getParentFile(), builder.loadProperties(bndfile));
                 return bndfile;
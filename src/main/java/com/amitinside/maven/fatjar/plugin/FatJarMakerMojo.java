@@ -11,27 +11,39 @@ package com.amitinside.maven.fatjar.plugin;
 
 import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
 import static com.amitinside.maven.fatjar.plugin.util.MojoHelper.*;
+import static com.google.common.base.Preconditions.checkArgument;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.BuildPluginManager;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
 
 import com.amitinside.maven.fatjar.plugin.util.MojoHelper;
 import com.google.common.collect.Lists;
 
-@Mojo(name = "makefat")
+@Mojo(name = "makefat", threadSafe = true)
 public class FatJarMakerMojo extends AbstractMojo {
 
+    private static final String DEFAULT_EXTRACTION_INCLUDE = "**/*.jar";
+
     @Component
     private MavenProject mavenProject;
 
@@ -41,18 +53,36 @@ public class FatJarMakerMojo extends AbstractMojo {
     @Component
     private BuildPluginManager pluginManager;
 
+    @Parameter(defaultValue = "${mojoExecution}", readonly = true)
+    private MojoExecution mojoExecution;
+
+    @Component
+    private RepositorySystem repositorySystem;
+
+    @Parameter(defaultValue = "${repositorySystemSession}", readonly = true)
+    private RepositorySystemSession repositorySession;
+
+    @Parameter(defaultValue = "${project.remoteProjectRepositories}", readonly = true)
+    private List<RemoteRepository> remoteRepositories;
+
     @Parameter
     private String mavenLocation;
 
-    @Parameter(required = true)
+    @Parameter
     private String bundleSymbolicName;
 
-    @Parameter(required = true)
+    @Parameter
     private String bundleVersion;
 
     @Parameter
     private String targetFilename;
 
+    @Parameter
+    private String mainClass;
+
+    @Parameter
+    private List<Bundle> bundles;
+
     @Parameter
     private String[] extensionsToUnarchive;
 
@@ -65,10 +95,148 @@ public class FatJarMakerMojo extends AbstractMojo {
     @Parameter(defaultValue = "false")
     private String resolvable;
 
+    @Parameter(defaultValue = "true")
+    private String skipIfUpToDate;
+
+    @Parameter(defaultValue = "false")
+    private String reproducible;
+
+    @Parameter(defaultValue = "0")
+    private String writerThreads;
+
+    @Parameter(defaultValue = "6")
+    private String compressionLevel;
+
+    @Parameter(defaultValue = "false")
+    private String storeCompressedEntries;
+
+    @Parameter(defaultValue = "256")
+    private String writerMemory;
+
+    @Parameter(defaultValue = "false")
+    private String lowMemory;
+
+    @Parameter(defaultValue = "false")
+    private String minimize;
+
+    @Parameter
+    private String[] minimizationRoots;
+
+    @Parameter
+    private String[] minimizationKeeps;
+
+    @Parameter(defaultValue = "false")
+    private String useAnalysisIndex;
+
+    @Parameter(defaultValue = "${settings.localRepository}/.cache/fatjar-maven-plugin-analysis")
+    private String analysisIndexDirectory;
+
+    @Parameter(defaultValue = "0")
+    private String analysisThreads;
+
+    @Parameter(defaultValue = "false")
+    private String failOnClassConflicts;
+
+    @Parameter(defaultValue = "false")
+    private String embedDependencies;
+
+    @Parameter(defaultValue = "false")
+    private String incremental;
+
+    @Parameter
+    private String startupClassList;
+
+    @Parameter(defaultValue = "false")
+    private String startupTraining;
+
+    @Parameter
+    private String[] startupTrainingArguments;
+
+    @Parameter(defaultValue = "300")
+    private String startupTrainingTimeout;
+
+    @Parameter(defaultValue = "false")
+    private String startupArchive;
+
+    @Parameter(defaultValue = "true")
+    private String writeCompositionReport;
+
+    @Parameter(defaultValue = "0")
+    private String bundleSizeBudget;
+
+    @Parameter(defaultValue = "0")
+    private String bundleEntryBudget;
+
+    @Parameter(defaultValue = "0")
+    private String dependencySizeBudget;
+
+    @Parameter(defaultValue = "true")
+    private String writeMetrics;
+
+    @Parameter(defaultValue = "${project.build.directory}/fatjar-metrics.json")
+    private String metricsReport;
+
+    @Parameter(defaultValue = "false")
+    private String flightRecorderEvents;
+
+    @Parameter(defaultValue = "0")
+    private String extractionThreads;
+
+    @Parameter(defaultValue = "full")
+    private String extractionMode;
+
+    @Parameter
+    private String[] extractionIncludes;
+
+    @Parameter(defaultValue = "2")
+    private String nestedArchiveDepth;
+
+    @Parameter(defaultValue = "false")
+    private String useExtractionCache;
+
+    @Parameter(defaultValue = "${settings.localRepository}/.cache/fatjar-maven-plugin")
+    private String extractionCacheDirectory;
+
+    @Parameter(defaultValue = "4096")
+    private String extractionCacheSize;
+
+    @Parameter(defaultValue = "copy")
+    private String stagingMode;
+
+    @Parameter(defaultValue = "0")
+    private String resolutionThreads;
+
+    @Parameter(defaultValue = "false")
+    private String pipelined;
+
+    @Parameter(defaultValue = "16")
+    private String pipelineQueueCapacity;
+
+    @Parameter(defaultValue = "4")
+    private String stagingThreads;
+
+    @Parameter(defaultValue = "plugin")
+    private String versionsUpdater;
+
+    @Parameter(defaultValue = "${settings.localRepository}/.cache/fatjar-maven-plugin-metadata")
+    private String metadataCacheDirectory;
+
+    @Parameter(defaultValue = "1440")
+    private String metadataCacheTtl;
+
+    @Parameter
+    private String versionsReport;
+
+    @Parameter(defaultValue = "${plugin.version}", readonly = true)
+    private String pluginVersion;
+
     private File sourceDirectory;
 
+    private final Configurer configurer = Configurer.newInstance();
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
+        validateBundles();
         String mavenHome = getMavenEnvironmentVariable();
         if (mavenHome == null) {
             try {
@@ -90,22 +258,125 @@ public class FatJarMakerMojo extends AbstractMojo {
         mavenLocation = mavenHome;
         try {
             resolveTargetLocation();
-            resolveBundleSymbolicName();
-            resolveBundleVersion();
-            resolveTargetFilename();
+            resolveBundles();
             resolveUpdateDependencyVersion();
             resolveBundleResolvableVersion();
+            resolveSkipIfUpToDate();
+            resolveReproducible();
+            resolveJarWriter();
+            resolveMinimize();
+            resolveAnalysisIndex();
+            resolveFailOnClassConflicts();
+            resolveEmbedDependencies();
+            resolveIncremental();
+            resolveStartupOptimization();
+            resolveComposition();
+            resolveMetrics();
+            resolveExtractionThreads();
+            resolveExtractionMode();
+            resolveExtractionIncludes();
+            resolveNestedArchiveDepth();
+            resolveExtractionCache();
+            resolveStagingMode();
+            resolvePipeline();
+            resolveResolutionThreads();
+            resolveVersionsUpdater();
 
             createSourceDirectory();
             storeConfugurationParameters();
-            MavenVersionsUpdater
-                    .newInstance(mavenProject, mavenSession, pluginManager, Lists.newArrayList(extensionsToUnarchive))
-                    .update();
-            LocalMavenRepositoryBrowser.newInstance().copyArtefact();
-            FatJarBuilder.newInstance(mavenProject).build();
         } catch (final Exception e) {
             throw new MojoFailureException(e.getMessage());
         }
+        final BuildMetrics metrics = (BuildMetrics) configurer.get(BUILD_METRICS);
+        try {
+            build(metrics);
+        } catch (final Exception e) {
+            throw new MojoFailureException(e.getMessage());
+        } finally {
+            writeMetrics(metrics);
+        }
+    }
+
+    protected void build(final BuildMetrics metrics) throws Exception {
+        final ArtefactResolver resolver = newArtefactResolver();
+        // the versions of the previous build are only trusted as long as the
+        // metadata cache, otherwise newly released versions are missed
+        final long versionsTtl = TimeUnit.MINUTES.toMillis(Long.parseLong(metadataCacheTtl));
+        if (Boolean.valueOf(skipIfUpToDate)) {
+            try (BuildMetrics.Phase phase = metrics.start("fingerprint")) {
+                final BuildFingerprint previous = BuildFingerprint.ofPreviousBuild(configurer, resolver, versionsTtl);
+                if (previous != null && previous.isUpToDate()) {
+                    getLog().info("Fat JAR is up-to-date. Skipping build.");
+                    return;
+                }
+            }
+        }
+        // the versions have to be updated before resolving any dependency
+        final Properties versionOverrides = updateVersions(metrics);
+        final BuildFingerprint fingerprint = BuildFingerprint.newInstance(configurer, resolver, versionOverrides);
+        try (BuildMetrics.Phase phase = metrics.start("fingerprint")) {
+            if (Boolean.valueOf(skipIfUpToDate) && fingerprint.isUpToDate()) {
+                getLog().info("Fat JAR is up-to-date. Skipping build.");
+                // renews the time the versions have been updated
+                fingerprint.store();
+                return;
+            }
+        }
+        final LocalMavenRepositoryBrowser browser = LocalMavenRepositoryBrowser.newInstance(configurer, resolver,
+                versionOverrides);
+        if (Boolean.valueOf(pipelined)) {
+            //@formatter:off
+            FatJarBuilder.newInstance(configurer, mavenProject, Collections.emptyList(), getLog())
+                         .build(BuildPipeline.newInstance(configurer, browser));
+            //@formatter:on
+        } else {
+            final List<File> repositoryArtefacts = browser.copyArtefact();
+            FatJarBuilder.newInstance(configurer, mavenProject, repositoryArtefacts, getLog()).build();
+        }
+        fingerprint.store();
+    }
+
+    protected ArtefactResolver newArtefactResolver() {
+        //@formatter:off
+        return ArtefactResolver.newInstance(repositorySystem,
+                                            repositorySession,
+                                            remoteRepositories,
+                                            Integer.parseInt(resolutionThreads));
+        //@formatter:on
+    }
+
+    protected Properties updateVersions(final BuildMetrics metrics) throws Exception {
+        //@formatter:off
+        final MetadataCache metadataCache = MetadataCache.newInstance(repositorySystem,
+                                                                      repositorySession,
+                                                                      remoteRepositories,
+                                                                      new File(metadataCacheDirectory),
+                                                                      Long.parseLong(metadataCacheTtl));
+        //@formatter:on
+        try (BuildMetrics.Phase phase = metrics.start("versions")) {
+            return MavenVersionsUpdater
+                    .newInstance(configurer, mavenProject, mavenSession, pluginManager, metadataCache).update();
+        }
+    }
+
+    protected Configurer getConfigurer() {
+        return configurer;
+    }
+
+    protected MavenProject getMavenProject() {
+        return mavenProject;
+    }
+
+    protected void writeMetrics(final BuildMetrics metrics) {
+        if (!Boolean.valueOf(writeMetrics)) {
+            return;
+        }
+        try {
+            metrics.writeReport(new File(metricsReport));
+        } catch (final IOException e) {
+            // the metrics must not fail an otherwise successful build
+            getLog().warn("Cannot write build metrics to " + metricsReport + ": " + e.getMessage());
+        }
     }
 
     private void resolveTargetLocation() throws IOException {
@@ -132,16 +403,57 @@ public class FatJarMakerMojo extends AbstractMojo {
         return file;
     }
 
-    private void resolveBundleSymbolicName() {
-        bundleSymbolicName = MojoHelper.getVersion(mavenProject.getProperties(), bundleSymbolicName);
+    /**
+     * Fails fast as the single bundle parameters cannot be declared required
+     * as long as they are optional with a list of bundles
+     */
+    private void validateBundles() throws MojoFailureException {
+        if (bundles == null || bundles.isEmpty()) {
+            requireParameter("bundleSymbolicName", bundleSymbolicName, " unless <bundles> are configured");
+            requireParameter("bundleVersion", bundleVersion, " unless <bundles> are configured");
+            return;
+        }
+        for (int i = 0; i < bundles.size(); i++) {
+            requireParameter("bundles[" + i + "].bundleSymbolicName", bundles.get(i).getBundleSymbolicName(), "");
+            requireParameter("bundles[" + i + "].bundleVersion", bundles.get(i).getBundleVersion(), "");
+        }
+    }
+
+    private static void requireParameter(final String name, final String value, final String condition)
+            throws MojoFailureException {
+        if (value == null || value.trim().isEmpty()) {
+            throw new MojoFailureException("The parameter '" + name + "' is required" + condition);
+        }
     }
 
-    private void resolveBundleVersion() {
-        bundleVersion = MojoHelper.getVersion(mavenProject.getProperties(), bundleVersion);
+    private void resolveBundles() {
+        final List<Bundle> definitions = Lists.newArrayList();
+        if (bundles == null || bundles.isEmpty()) {
+            definitions.add(Bundle.newInstance(bundleSymbolicName, bundleVersion, targetFilename, mainClass, null,
+                    null));
+        } else {
+            definitions.addAll(bundles);
+        }
+        bundles = Lists.newArrayList();
+        for (final Bundle definition : definitions) {
+            bundles.add(resolveBundle(definition));
+        }
     }
 
-    private void resolveTargetFilename() {
-        targetFilename = MojoHelper.getVersion(mavenProject.getProperties(), targetFilename);
+    private Bundle resolveBundle(final Bundle bundle) {
+        final String bsn = MojoHelper.getVersion(mavenProject.getProperties(), bundle.getBundleSymbolicName());
+        final String version = MojoHelper.getVersion(mavenProject.getProperties(), bundle.getBundleVersion());
+        // an undefined property resolves to nothing
+        checkArgument(bsn != null, "Bundle Symbolic Name %s cannot be resolved", bundle.getBundleSymbolicName());
+        checkArgument(version != null, "Bundle Version %s cannot be resolved", bundle.getBundleVersion());
+        String filename = bundle.getTargetFilename();
+        if (filename == null || filename.trim().isEmpty()) {
+            filename = bsn + '-' + version + ".jar";
+        } else {
+            filename = MojoHelper.getVersion(mavenProject.getProperties(), filename);
+        }
+        return Bundle.newInstance(bsn, version, filename, bundle.getMainClass(), bundle.getIncludes(),
+                bundle.getExcludes());
     }
 
     private void resolveUpdateDependencyVersion() {
@@ -152,23 +464,185 @@ public class FatJarMakerMojo extends AbstractMojo {
         resolvable = MojoHelper.getVersion(mavenProject.getProperties(), resolvable);
     }
 
-    private void createSourceDirectory() {
-        final String userDir = System.getProperty("user.dir");
-        sourceDirectory = new File(userDir + File.separator + "fatjar_build");
+    private void resolveSkipIfUpToDate() {
+        skipIfUpToDate = MojoHelper.getVersion(mavenProject.getProperties(), skipIfUpToDate);
+    }
+
+    private void resolveReproducible() {
+        reproducible = MojoHelper.getVersion(mavenProject.getProperties(), reproducible);
+    }
+
+    private void resolveJarWriter() {
+        writerThreads = MojoHelper.getVersion(mavenProject.getProperties(), writerThreads);
+        compressionLevel = MojoHelper.getVersion(mavenProject.getProperties(), compressionLevel);
+        storeCompressedEntries = MojoHelper.getVersion(mavenProject.getProperties(), storeCompressedEntries);
+        writerMemory = MojoHelper.getVersion(mavenProject.getProperties(), writerMemory);
+        lowMemory = MojoHelper.getVersion(mavenProject.getProperties(), lowMemory);
+    }
+
+    private void resolveMinimize() {
+        minimize = MojoHelper.getVersion(mavenProject.getProperties(), minimize);
+    }
+
+    private void resolveAnalysisIndex() throws IOException {
+        useAnalysisIndex = MojoHelper.getVersion(mavenProject.getProperties(), useAnalysisIndex);
+        analysisThreads = MojoHelper.getVersion(mavenProject.getProperties(), analysisThreads);
+        analysisIndexDirectory = resolveLocation(analysisIndexDirectory).getCanonicalPath();
+    }
+
+    private void resolveFailOnClassConflicts() {
+        failOnClassConflicts = MojoHelper.getVersion(mavenProject.getProperties(), failOnClassConflicts);
+    }
+
+    private void resolveEmbedDependencies() {
+        embedDependencies = MojoHelper.getVersion(mavenProject.getProperties(), embedDependencies);
+    }
+
+    private void resolveIncremental() {
+        incremental = MojoHelper.getVersion(mavenProject.getProperties(), incremental);
+    }
+
+    private void resolveStartupOptimization() throws IOException {
+        if (startupClassList != null) {
+            startupClassList = resolveLocation(startupClassList).getCanonicalPath();
+        }
+        startupTraining = MojoHelper.getVersion(mavenProject.getProperties(), startupTraining);
+        startupTrainingTimeout = MojoHelper.getVersion(mavenProject.getProperties(), startupTrainingTimeout);
+        startupArchive = MojoHelper.getVersion(mavenProject.getProperties(), startupArchive);
+    }
+
+    private void resolveComposition() {
+        writeCompositionReport = MojoHelper.getVersion(mavenProject.getProperties(), writeCompositionReport);
+        bundleSizeBudget = MojoHelper.getVersion(mavenProject.getProperties(), bundleSizeBudget);
+        bundleEntryBudget = MojoHelper.getVersion(mavenProject.getProperties(), bundleEntryBudget);
+        dependencySizeBudget = MojoHelper.getVersion(mavenProject.getProperties(), dependencySizeBudget);
+    }
+
+    private void resolveMetrics() throws IOException {
+        writeMetrics = MojoHelper.getVersion(mavenProject.getProperties(), writeMetrics);
+        metricsReport = resolveLocation(metricsReport).getCanonicalPath();
+        flightRecorderEvents = MojoHelper.getVersion(mavenProject.getProperties(), flightRecorderEvents);
+        final BuildMetrics metrics = BuildMetrics.newInstance(Boolean.valueOf(flightRecorderEvents));
+        if (Boolean.valueOf(flightRecorderEvents) && !metrics.isFlightRecorderAvailable()) {
+            getLog().warn("Java Flight Recorder events are not supported by this JVM");
+        }
+        configurer.put(BUILD_METRICS, metrics);
+    }
+
+    private void resolveExtractionThreads() {
+        extractionThreads = MojoHelper.getVersion(mavenProject.getProperties(), extractionThreads);
+    }
+
+    private void resolveExtractionMode() {
+        extractionMode = MojoHelper.getVersion(mavenProject.getProperties(), extractionMode);
+    }
+
+    private void resolveExtractionIncludes() {
+        if (extractionIncludes == null || extractionIncludes.length == 0) {
+            extractionIncludes = new String[] { DEFAULT_EXTRACTION_INCLUDE };
+        }
+    }
+
+    private void resolveNestedArchiveDepth() {
+        nestedArchiveDepth = MojoHelper.getVersion(mavenProject.getProperties(), nestedArchiveDepth);
+    }
+
+    private void resolveExtractionCache() throws IOException {
+        useExtractionCache = MojoHelper.getVersion(mavenProject.getProperties(), useExtractionCache);
+        extractionCacheSize = MojoHelper.getVersion(mavenProject.getProperties(), extractionCacheSize);
+        extractionCacheDirectory = resolveLocation(extractionCacheDirectory).getCanonicalPath();
+    }
+
+    private void resolveStagingMode() {
+        stagingMode = MojoHelper.getVersion(mavenProject.getProperties(), stagingMode);
+    }
+
+    private void resolvePipeline() {
+        pipelined = MojoHelper.getVersion(mavenProject.getProperties(), pipelined);
+        pipelineQueueCapacity = MojoHelper.getVersion(mavenProject.getProperties(), pipelineQueueCapacity);
+        stagingThreads = MojoHelper.getVersion(mavenProject.getProperties(), stagingThreads);
+    }
+
+    private void resolveResolutionThreads() {
+        resolutionThreads = MojoHelper.getVersion(mavenProject.getProperties(), resolutionThreads);
+    }
+
+    private void resolveVersionsUpdater() throws IOException {
+        versionsUpdater = MojoHelper.getVersion(mavenProject.getProperties(), versionsUpdater);
+        metadataCacheTtl = MojoHelper.getVersion(mavenProject.getProperties(), metadataCacheTtl);
+        metadataCacheDirectory = resolveLocation(metadataCacheDirectory).getCanonicalPath();
+        if (versionsReport != null) {
+            versionsReport = resolveLocation(versionsReport).getCanonicalPath();
+        }
+    }
+
+    private void createSourceDirectory() throws IOException {
+        // unique per module and execution to allow parallel builds
+        final File buildDirectory = new File(mavenProject.getBuild().getDirectory());
+        sourceDirectory = new File(buildDirectory, "fatjar_build" + File.separator + mojoExecution.getExecutionId());
+        // remnants of an aborted build must not end up in the bundle
+        FileUtils.deleteDirectory(sourceDirectory);
+        FileUtils.forceMkdir(sourceDirectory);
     }
 
     private void storeConfugurationParameters() {
-        final Configurer configurer = Configurer.INSTANCE;
         configurer.put(MAVEN_LOCATION, mavenLocation);
         configurer.put(POM_LOCATION, mavenProject.getFile().getPath());
-        configurer.put(BUNDLE_SYMBOLIC_NAME, bundleSymbolicName);
-        configurer.put(BUNDLE_VERSION, bundleVersion);
+        configurer.put(DEPENDENCIES, mavenProject.getDependencies());
+        configurer.put(BUNDLES, bundles);
         configurer.put(BUNDLE_RESOLVABLE, resolvable);
-        configurer.put(TARGET_FILENAME, targetFilename);
         configurer.put(EXTENSION_TO_UNARCHIVE, extensionsToUnarchive);
         configurer.put(SOURCE_DIRECTORY, sourceDirectory);
         configurer.put(TARGET_DIRECTORY, targetDirectory);
         configurer.put(UPDATE_VERSION, updateDependencyVersions);
+        configurer.put(PLUGIN_VERSION, pluginVersion);
+        configurer.put(REPRODUCIBLE_OUTPUT, reproducible);
+        configurer.put(WRITER_THREADS, writerThreads);
+        configurer.put(COMPRESSION_LEVEL, compressionLevel);
+        configurer.put(STORE_COMPRESSED_ENTRIES, storeCompressedEntries);
+        configurer.put(WRITER_MEMORY, writerMemory);
+        configurer.put(LOW_MEMORY, lowMemory);
+        configurer.put(MINIMIZE, minimize);
+        if (minimizationRoots != null) {
+            configurer.put(MINIMIZATION_ROOTS, minimizationRoots);
+        }
+        if (minimizationKeeps != null) {
+            configurer.put(MINIMIZATION_KEEPS, minimizationKeeps);
+        }
+        configurer.put(USE_ANALYSIS_INDEX, useAnalysisIndex);
+        configurer.put(ANALYSIS_INDEX_DIRECTORY, analysisIndexDirectory);
+        configurer.put(ANALYSIS_THREADS, analysisThreads);
+        configurer.put(FAIL_ON_CLASS_CONFLICTS, failOnClassConflicts);
+        configurer.put(EMBED_DEPENDENCIES, embedDependencies);
+        configurer.put(INCREMENTAL, incremental);
+        if (startupClassList != null) {
+            configurer.put(STARTUP_CLASS_LIST, startupClassList);
+        }
+        configurer.put(STARTUP_TRAINING, startupTraining);
+        if (startupTrainingArguments != null) {
+            configurer.put(STARTUP_TRAINING_ARGUMENTS, startupTrainingArguments);
+        }
+        configurer.put(STARTUP_TRAINING_TIMEOUT, startupTrainingTimeout);
+        configurer.put(STARTUP_ARCHIVE, startupArchive);
+        configurer.put(WRITE_COMPOSITION_REPORT, writeCompositionReport);
+        configurer.put(BUNDLE_SIZE_BUDGET, bundleSizeBudget);
+        configurer.put(BUNDLE_ENTRY_BUDGET, bundleEntryBudget);
+        configurer.put(DEPENDENCY_SIZE_BUDGET, dependencySizeBudget);
+        configurer.put(EXTRACTION_THREADS, extractionThreads);
+        configurer.put(EXTRACTION_MODE, extractionMode);
+        configurer.put(EXTRACTION_INCLUDES, extractionIncludes);
+        configurer.put(NESTED_ARCHIVE_DEPTH, nestedArchiveDepth);
+        configurer.put(USE_EXTRACTION_CACHE, useExtractionCache);
+        configurer.put(EXTRACTION_CACHE_DIRECTORY, extractionCacheDirectory);
+        configurer.put(EXTRACTION_CACHE_SIZE, extractionCacheSize);
+        configurer.put(STAGING_MODE, stagingMode);
+        configurer.put(PIPELINED, pipelined);
+        configurer.put(PIPELINE_QUEUE_CAPACITY, pipelineQueueCapacity);
+        configurer.put(STAGING_THREADS, stagingThreads);
+        configurer.put(VERSIONS_UPDATER, versionsUpdater);
+        if (versionsReport != null) {
+            configurer.put(VERSIONS_REPORT, versionsReport);
+        }
     }
 
 }
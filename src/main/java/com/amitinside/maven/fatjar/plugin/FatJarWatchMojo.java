@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.SOURCE_DIRECTORY;
+import static java.util.stream.Collectors.joining;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import com.amitinside.maven.fatjar.plugin.util.MojoHelper;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Builds the fat JARs like {@code makefat} and stays resident afterwards to
+ * rebuild them whenever the POM or any of the resolved dependencies changes.
+ * The caches, the staged and the extracted dependencies of the previous build
+ * are kept in memory and on disk, so a changed JAR only rebuilds the bundles
+ * it belongs to. A changed POM, a changed archive to unarchive or a removed
+ * dependency rebuilds everything.
+ */
+@Mojo(name = "watch", threadSafe = true)
+public class FatJarWatchMojo extends FatJarMakerMojo {
+
+    @Parameter(defaultValue = "500")
+    private String watchQuietPeriod;
+
+    private File pom;
+    private String pomHash;
+    private Properties versionOverrides = new Properties();
+    private LocalMavenRepositoryBrowser browser;
+    private FatJarBuilder builder;
+    private Set<File> dependencies = Collections.emptySet();
+
+    @Override
+    protected void build(final BuildMetrics metrics) throws Exception {
+        watchQuietPeriod = MojoHelper.getVersion(getMavenProject().getProperties(), watchQuietPeriod);
+        pom = getMavenProject().getFile().getAbsoluteFile();
+        final ArtefactResolver resolver = newArtefactResolver();
+        try (ChangeWatcher watcher = ChangeWatcher.newInstance(Long.parseLong(watchQuietPeriod))) {
+            watcher.watch(Collections.singleton(pom));
+            Set<File> changed = Collections.singleton(pom);
+            while (true) {
+                rebuild(metrics, resolver, watcher, changed);
+                getLog().info("Watching " + (dependencies.size() + 1) + " files for changes");
+                changed = watcher.awaitChanges();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            FileUtils.deleteDirectory((File) getConfigurer().get(SOURCE_DIRECTORY));
+        }
+    }
+
+    private void rebuild(final BuildMetrics metrics, final ArtefactResolver resolver, final ChangeWatcher watcher,
+            final Set<File> changed) throws IOException {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final Collection<Bundle> rebuilt;
+        try (BuildMetrics.Phase phase = metrics.start("rebuild")) {
+            if (builder == null || requiresFullBuild(changed)) {
+                rebuilt = fullBuild(metrics, resolver, watcher);
+            } else {
+                browser.stage(changed);
+                rebuilt = builder.update(changed);
+            }
+            phase.addFiles(changed.size()).addEntries(rebuilt.size());
+        } catch (final Exception e) {
+            // the next change starts from scratch
+            builder = null;
+            getLog().error("Rebuild failed: " + e.getMessage());
+            return;
+        } finally {
+            writeMetrics(metrics);
+        }
+        final long latency = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+        if (rebuilt.isEmpty()) {
+            getLog().info("No bundle affected by the changes");
+        } else {
+            //@formatter:off
+            getLog().info("Rebuilt " + rebuilt.stream().map(Bundle::getBundleSymbolicName).collect(joining(", "))
+                        + " in " + latency + " ms");
+            //@formatter:on
+        }
+        try {
+            // a subsequent makefat must not skip the build with a stale fingerprint
+            BuildFingerprint.newInstance(getConfigurer(), resolver, versionOverrides).store();
+        } catch (final Exception e) {
+            getLog().warn("Cannot store build fingerprint: " + e.getMessage());
+        }
+    }
+
+    private boolean requiresFullBuild(final Set<File> changed) throws IOException {
+        if (changed.contains(pom) && !hash(pom).equals(pomHash)) {
+            return true;
+        }
+        changed.remove(pom);
+        return !dependencies.containsAll(changed) || !changed.stream().allMatch(File::isFile);
+    }
+
+    private List<Bundle> fullBuild(final BuildMetrics metrics, final ArtefactResolver resolver,
+            final ChangeWatcher watcher) throws Exception {
+        // artefacts of removed dependencies must not end up in the bundles
+        final File sourceDirectory = (File) getConfigurer().get(SOURCE_DIRECTORY);
+        FileUtils.deleteDirectory(sourceDirectory);
+        FileUtils.forceMkdir(sourceDirectory);
+
+        versionOverrides = updateVersions(metrics);
+        // the versions updater can rewrite the POM which must not trigger a rebuild
+        pomHash = hash(pom);
+        browser = LocalMavenRepositoryBrowser.newInstance(getConfigurer(), resolver, versionOverrides);
+        final List<File> resolved = Lists.newArrayList();
+        browser.resolveArtefacts().forEach(f -> resolved.add(f.getAbsoluteFile()));
+        dependencies = Sets.newHashSet(resolved);
+
+        final List<File> watched = Lists.newArrayList(resolved);
+        watched.add(pom);
+        watcher.watch(watched);
+
+        final List<File> repositoryArtefacts = browser.stage(resolved);
+        builder = FatJarBuilder.newInstance(getConfigurer(), getMavenProject(), repositoryArtefacts, getLog());
+        return builder.update(resolved);
+    }
+
+    private static String hash(final File file) throws IOException {
+        return file.isFile() ? Files.asByteSource(file).hash(Hashing.sha256()).toString() : "";
+    }
+
+}
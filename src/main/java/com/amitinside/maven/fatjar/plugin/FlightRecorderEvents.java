@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Emits build phases as Java Flight Recorder events. The events are defined
+ * at runtime through {@code jdk.jfr.EventFactory} which is accessed
+ * reflectively, as the plugin is compiled for Java 8 where it is not
+ * available. Nothing is emitted on JVMs without it. CPU load and heap usage
+ * are recorded by the JVM's own events.
+ */
+final class FlightRecorderEvents {
+
+    private static final String EVENT_NAME = "com.amitinside.maven.fatjar.Phase";
+
+    //@formatter:off
+    private static final List<String> LONG_FIELDS = ImmutableList.of("bytesRead",
+                                                                     "bytesWritten",
+                                                                     "files",
+                                                                     "entries");
+    //@formatter:on
+
+    private final Object factory;
+    private final Method newEvent;
+    private final Method begin;
+    private final Method end;
+    private final Method set;
+    private final Method commit;
+
+    private FlightRecorderEvents() {
+        Object eventFactory = null;
+        Method newEventMethod = null;
+        Method beginMethod = null;
+        Method endMethod = null;
+        Method setMethod = null;
+        Method commitMethod = null;
+        try {
+            final Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+            final Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            final Class<?> annotationClass = Class.forName("jdk.jfr.AnnotationElement");
+            final Class<?> descriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+
+            final Constructor<?> annotation = annotationClass.getConstructor(Class.class, Object.class);
+            final List<Object> annotations = Lists.newArrayList();
+            annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Name"), EVENT_NAME));
+            annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Label"), "FatJAR Build Phase"));
+            annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Category"),
+                    new String[] { "Maven", "FatJAR" }));
+
+            final Constructor<?> descriptor = descriptorClass.getConstructor(Class.class, String.class);
+            final List<Object> fields = Lists.newArrayList();
+            fields.add(descriptor.newInstance(String.class, "phase"));
+            fields.add(descriptor.newInstance(String.class, "subject"));
+            for (final String field : LONG_FIELDS) {
+                fields.add(descriptor.newInstance(long.class, field));
+            }
+            eventFactory = factoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+            newEventMethod = factoryClass.getMethod("newEvent");
+            beginMethod = eventClass.getMethod("begin");
+            endMethod = eventClass.getMethod("end");
+            setMethod = eventClass.getMethod("set", int.class, Object.class);
+            commitMethod = eventClass.getMethod("commit");
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            // Java Flight Recorder is not supported by this JVM
+            eventFactory = null;
+        }
+        factory = eventFactory;
+        newEvent = newEventMethod;
+        begin = beginMethod;
+        end = endMethod;
+        set = setMethod;
+        commit = commitMethod;
+    }
+
+    static FlightRecorderEvents newInstance() {
+        return new FlightRecorderEvents();
+    }
+
+    boolean isAvailable() {
+        return factory != null;
+    }
+
+    /**
+     * Creates and begins a new event
+     *
+     * @return the event or {@code null} if not supported
+     */
+    Object begin() {
+        if (factory == null) {
+            return null;
+        }
+        try {
+            final Object event = newEvent.invoke(factory);
+            begin.invoke(event);
+            return event;
+        } catch (final ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Ends and commits the specified event
+     */
+    void commit(final Object event, final String phase, final String subject, final long... values) {
+        if (event == null) {
+            return;
+        }
+        try {
+            end.invoke(event);
+            set.invoke(event, 0, phase);
+            set.invoke(event, 1, subject);
+            for (int i = 0; i < values.length; i++) {
+                set.invoke(event, i + 2, values[i]);
+            }
+            commit.invoke(event);
+        } catch (final ReflectiveOperationException e) {
+            // the metrics report is not affected
+        }
+    }
+
+}
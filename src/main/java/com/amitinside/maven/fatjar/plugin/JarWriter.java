@@ -0,0 +1,580 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.io.Files.asByteSource;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.Resource;
+
+/**
+ * Writes a bnd {@link Jar} or the entries of a classpath by compressing them in
+ * parallel and writing them in order to the target file. The content buffered
+ * for compression is bounded by the configured writer memory, larger entries
+ * are streamed from their source into the target file. In reproducible mode, the entries are
+ * written with fixed timestamps and a stable manifest ordering, and the target
+ * file is only replaced if its content differs.
+ */
+public final class JarWriter {
+
+    private static final String MANIFEST_DIRECTORY = "META-INF/";
+    private static final int MAX_LINE_LENGTH = 72;
+    private static final byte[] NEWLINE = { '\r', '\n' };
+    private static final byte[] EMPTY = new byte[0];
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // entries compressed ahead of the writer per thread to bound the memory
+    private static final int PENDING_ENTRIES_PER_THREAD = 4;
+    private static final Set<String> COMPRESSED_EXTENSIONS = ImmutableSet.of("jar", "war", "ear", "zip", "gz",
+            "xz", "bz2", "7z", "png", "jpg", "jpeg", "gif");
+
+    private final boolean reproducible;
+    private final int threads;
+    private final int compressionLevel;
+    private final boolean storeCompressedEntries;
+    private final long memoryBudget;
+    private final long timestamp;
+    private final String settings;
+
+    private JarWriter(final Configurer configurer) {
+        reproducible = Boolean.valueOf(configurer.getAsString(REPRODUCIBLE_OUTPUT));
+        final int configuredThreads = Integer.parseInt(configurer.getAsString(WRITER_THREADS));
+        threads = configuredThreads > 0 ? configuredThreads : Runtime.getRuntime().availableProcessors();
+        compressionLevel = Integer.parseInt(configurer.getAsString(COMPRESSION_LEVEL));
+        // embedded JARs are stored to avoid compressing them a second time
+        storeCompressedEntries = Boolean.valueOf(configurer.getAsString(STORE_COMPRESSED_ENTRIES))
+                || Boolean.valueOf(configurer.getAsString(EMBED_DEPENDENCIES));
+        memoryBudget = Long.parseLong(configurer.getAsString(WRITER_MEMORY)) * 1024 * 1024;
+        // local time as the DOS timestamp of ZIP entries does not carry a timezone
+        timestamp = LocalDateTime.of(1980, 2, 1, 0, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        // entries written with other settings cannot be reused
+        settings = "level=" + compressionLevel + ",store=" + storeCompressedEntries + ",reproducible=" + reproducible;
+
+        checkArgument(compressionLevel >= Deflater.NO_COMPRESSION && compressionLevel <= Deflater.BEST_COMPRESSION,
+                "Compression Level must be between 0 and 9");
+        checkArgument(memoryBudget > 0, "Writer Memory must be positive");
+    }
+
+    public static JarWriter newInstance(final Configurer configurer) {
+        return new JarWriter(configurer);
+    }
+
+    /**
+     * Writes the specified JAR to the target file
+     *
+     * @param jar the JAR to write
+     * @param target the file to write to
+     * @return {@code true} if the target has been written, {@code false} if the
+     *         output is reproducible and the existing target already has the
+     *         same content
+     * @throws Exception if the JAR cannot be written
+     */
+    public boolean write(final Jar jar, final File target) throws Exception {
+        return write(jar, target, null);
+    }
+
+    /**
+     * Writes the specified JAR to the target file and copies the entries which
+     * are unchanged according to the specified index from the existing target
+     * without compressing them again. The index is stored next to the target
+     * for the next build.
+     *
+     * @param jar the JAR to write
+     * @param target the file to write to
+     * @param index the index of the entries of the JAR or {@code null} to
+     *            compress all entries
+     * @return {@code true} if the target has been written, {@code false} if the
+     *         output is reproducible and the existing target already has the
+     *         same content
+     * @throws Exception if the JAR cannot be written
+     */
+    public boolean write(final Jar jar, final File target, final PatchIndex index) throws Exception {
+        checkNotNull(jar, "JAR cannot be null");
+
+        final Map<String, Content> contents = Maps.newHashMap();
+        for (final Map.Entry<String, Resource> resource : jar.getResources().entrySet()) {
+            contents.put(resource.getKey(), new ResourceContent(resource.getValue()));
+        }
+        return write(jar.getManifest(), contents, target, index);
+    }
+
+    /**
+     * Writes a JAR with the specified manifest consisting of the entries of
+     * the specified classpath without loading them into a bnd {@link Jar}.
+     * Only the names, sizes and modification times of the entries are held in
+     * memory, their content is read from the classpath while writing.
+     *
+     * @param manifest the manifest of the JAR to write
+     * @param classpath the JARs whose entries to write, an entry contained in
+     *            more than one JAR is taken from the first one
+     * @param filter the names of the entries to write
+     * @param target the file to write to
+     * @param index the index of the entries of the classpath or {@code null}
+     *            to compress all entries
+     * @return {@code true} if the target has been written, {@code false} if the
+     *         output is reproducible and the existing target already has the
+     *         same content
+     * @throws Exception if the classpath cannot be read or the JAR cannot be
+     *             written
+     */
+    public boolean write(final Manifest manifest, final List<File> classpath, final Predicate<String> filter,
+            final File target, final PatchIndex index) throws Exception {
+        checkNotNull(manifest, "Manifest cannot be null");
+        checkNotNull(classpath, "Classpath cannot be null");
+        checkNotNull(filter, "Filter cannot be null");
+
+        final List<java.util.zip.ZipFile> zips = Lists.newArrayList();
+        try {
+            final Map<String, Content> contents = Maps.newHashMap();
+            for (final File file : classpath) {
+                final java.util.zip.ZipFile zip = new java.util.zip.ZipFile(file);
+                zips.add(zip);
+                for (final Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                    final ZipEntry entry = e.nextElement();
+                    if (!entry.isDirectory() && filter.test(entry.getName())) {
+                        contents.putIfAbsent(entry.getName(), new ZipEntryContent(zip, entry));
+                    }
+                }
+            }
+            return write(manifest, contents, target, index);
+        } finally {
+            for (final java.util.zip.ZipFile zip : zips) {
+                zip.close();
+            }
+        }
+    }
+
+    private boolean write(final Manifest manifest, final Map<String, Content> contents, final File target,
+            final PatchIndex index) throws Exception {
+        checkNotNull(target, "Target cannot be null");
+
+        final File temp = new File(target.getAbsoluteFile().getParentFile(),
+                '.' + target.getName() + '.' + UUID.randomUUID());
+        try {
+            final HashCode digest;
+            if (index != null) {
+                index.setWriterSettings(settings);
+            }
+            final PatchIndex previous = index == null ? null : PatchIndex.load(target);
+            try (HashingOutputStream out = new HashingOutputStream(Hashing.sha256(),
+                    new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE));
+                    ZipFile previousJar = previous == null ? null : new ZipFile(target)) {
+                write(manifest, contents, out, index, previous, previousJar);
+                digest = out.hash();
+            }
+            if (reproducible && target.isFile() && digest.equals(asByteSource(target).hash(Hashing.sha256()))) {
+                if (index != null) {
+                    index.store(target);
+                }
+                return false;
+            }
+            try {
+                Files.move(temp.toPath(), target.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), target.toPath(), REPLACE_EXISTING);
+            }
+            if (index != null) {
+                index.store(target);
+            }
+            return true;
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    private void write(final Manifest manifest, final Map<String, Content> contents, final OutputStream out,
+            final PatchIndex index, final PatchIndex previous, final ZipFile previousJar) throws Exception {
+        final NavigableSet<String> names = Sets.newTreeSet();
+        for (final String name : contents.keySet()) {
+            names.add(name);
+            // add all parent directories
+            for (int i = name.indexOf('/'); i >= 0 && i < name.length() - 1; i = name.indexOf('/', i + 1)) {
+                names.add(name.substring(0, i + 1));
+            }
+        }
+        names.remove(JarFile.MANIFEST_NAME);
+        names.remove(MANIFEST_DIRECTORY);
+
+        final long now = System.currentTimeMillis();
+        final List<PendingEntry> entries = Lists.newArrayList();
+        // the manifest has to be the first entry
+        entries.add(new PendingEntry(MANIFEST_DIRECTORY, null, EMPTY, now));
+        entries.add(new PendingEntry(JarFile.MANIFEST_NAME, null, writeManifest(manifest), now));
+        for (final String name : names) {
+            final Content content = contents.get(name);
+            if (content == null) {
+                entries.add(new PendingEntry(name, null, EMPTY, now));
+            } else {
+                final long lastModified = content.lastModified() > 0 ? content.lastModified() : now;
+                entries.add(new PendingEntry(name, content, null, lastModified));
+            }
+        }
+
+        //@formatter:off
+        final ExecutorService executor = Executors.newFixedThreadPool(threads,
+                                                new ThreadFactoryBuilder()
+                                                        .setNameFormat("fatjar-writer-%d")
+                                                        .setDaemon(true)
+                                                        .build());
+        //@formatter:on
+        try {
+            final ZipArchiveOutputStream zip = new ZipArchiveOutputStream(out);
+            zip.setUseZip64(Zip64Mode.AsNeeded);
+            zip.setLevel(compressionLevel);
+            final Deque<Future<CompressedEntry>> pending = new ArrayDeque<>();
+            final Deque<Long> pendingFootprints = new ArrayDeque<>();
+            long bufferedBytes = 0;
+            for (final PendingEntry entry : entries) {
+                final ZipArchiveEntry unchanged = entry.source == null || previousJar == null
+                        || !index.isUnchanged(entry.name, previous) ? null : previousJar.getEntry(entry.name);
+                if (unchanged != null && unchanged.getCompressedSize() >= 0) {
+                    final long footprint = unchanged.getCompressedSize();
+                    index.addReusedEntry();
+                    if (footprint > memoryBudget / threads) {
+                        // keeps the order of the entries
+                        while (!pending.isEmpty()) {
+                            writeEntry(zip, pending.removeFirst());
+                            bufferedBytes -= pendingFootprints.removeFirst();
+                        }
+                        try (InputStream in = previousJar.getRawInputStream(unchanged)) {
+                            zip.addRawArchiveEntry(unchanged, in);
+                        }
+                        continue;
+                    }
+                    while (!pending.isEmpty() && (pending.size() >= threads * PENDING_ENTRIES_PER_THREAD
+                            || bufferedBytes + footprint > memoryBudget)) {
+                        writeEntry(zip, pending.removeFirst());
+                        bufferedBytes -= pendingFootprints.removeFirst();
+                    }
+                    pending.addLast(executor.submit(() -> copyRaw(previousJar, unchanged)));
+                    pendingFootprints.addLast(footprint);
+                    bufferedBytes += footprint;
+                    continue;
+                }
+                final long size = entry.size();
+                // the uncompressed and the compressed content are buffered at the same time
+                final long footprint = 2 * size;
+                if (size < 0 || footprint > memoryBudget / threads) {
+                    // keeps the order of the entries
+                    while (!pending.isEmpty()) {
+                        writeEntry(zip, pending.removeFirst());
+                        bufferedBytes -= pendingFootprints.removeFirst();
+                    }
+                    writeStreaming(zip, entry);
+                    continue;
+                }
+                while (!pending.isEmpty() && (pending.size() >= threads * PENDING_ENTRIES_PER_THREAD
+                        || bufferedBytes + footprint > memoryBudget)) {
+                    writeEntry(zip, pending.removeFirst());
+                    bufferedBytes -= pendingFootprints.removeFirst();
+                }
+                pending.addLast(executor.submit(() -> compress(entry.name, entry.read(), entry.lastModified)));
+                pendingFootprints.addLast(footprint);
+                bufferedBytes += footprint;
+            }
+            while (!pending.isEmpty()) {
+                writeEntry(zip, pending.removeFirst());
+            }
+            zip.finish();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void writeStreaming(final ZipArchiveOutputStream zip, final PendingEntry pending) throws Exception {
+        final ZipArchiveEntry entry = new ZipArchiveEntry(pending.name);
+        entry.setTime(reproducible ? timestamp : pending.lastModified);
+        if (compressionLevel == Deflater.NO_COMPRESSION || isCompressed(pending.name)) {
+            // the size and checksum of stored entries precede their content
+            final CRC32 crc = new CRC32();
+            try (InputStream in = pending.source.open()) {
+                entry.setSize(ByteStreams.copy(in, new CheckedOutputStream(ByteStreams.nullOutputStream(), crc)));
+            }
+            entry.setCrc(crc.getValue());
+            entry.setMethod(ZipEntry.STORED);
+        } else {
+            entry.setMethod(ZipEntry.DEFLATED);
+        }
+        zip.putArchiveEntry(entry);
+        try (InputStream in = pending.source.open()) {
+            ByteStreams.copy(in, zip);
+        }
+        zip.closeArchiveEntry();
+    }
+
+    private static void writeEntry(final ZipArchiveOutputStream zip, final Future<CompressedEntry> future)
+            throws Exception {
+        final CompressedEntry compressed;
+        try {
+            compressed = future.get();
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+        zip.addRawArchiveEntry(compressed.entry, new ByteArrayInputStream(compressed.data));
+    }
+
+    private static CompressedEntry copyRaw(final ZipFile previousJar, final ZipArchiveEntry entry)
+            throws IOException {
+        // the compressed content is copied as is with the size and checksum of the entry
+        try (InputStream in = previousJar.getRawInputStream(entry)) {
+            return new CompressedEntry(entry, ByteStreams.toByteArray(in));
+        }
+    }
+
+    private CompressedEntry compress(final String name, final byte[] content, final long lastModified) {
+        final ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setTime(reproducible ? timestamp : lastModified);
+        entry.setSize(content.length);
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setCrc(crc.getValue());
+
+        byte[] data = content;
+        if (content.length > 0 && compressionLevel > Deflater.NO_COMPRESSION && !isCompressed(name)) {
+            final byte[] deflated = deflate(content);
+            // small or random entries can grow by deflating them
+            if (deflated.length < content.length) {
+                data = deflated;
+            }
+        }
+        entry.setMethod(data == content ? ZipEntry.STORED : ZipEntry.DEFLATED);
+        entry.setCompressedSize(data.length);
+        return new CompressedEntry(entry, data);
+    }
+
+    private boolean isCompressed(final String name) {
+        if (!storeCompressedEntries) {
+            return false;
+        }
+        final int index = name.lastIndexOf('.');
+        return index >= 0 && COMPRESSED_EXTENSIONS.contains(name.substring(index + 1).toLowerCase(Locale.ENGLISH));
+    }
+
+    private byte[] deflate(final byte[] content) {
+        // ZIP entries contain raw deflate data without the zlib wrapper
+        final Deflater deflater = new Deflater(compressionLevel, true);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(content.length / 2, 64));
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] writeManifest(final Manifest manifest) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Manifest source = manifest == null ? new Manifest() : manifest;
+        final Attributes main = source.getMainAttributes();
+        final String manifestVersion = main.getValue(Attributes.Name.MANIFEST_VERSION);
+        writeHeader(out, Attributes.Name.MANIFEST_VERSION.toString(),
+                manifestVersion == null ? "1.0" : manifestVersion);
+        writeAttributes(out, main);
+        out.write(NEWLINE);
+
+        for (final String section : Sets.newTreeSet(source.getEntries().keySet())) {
+            writeHeader(out, "Name", section);
+            writeAttributes(out, source.getEntries().get(section));
+            out.write(NEWLINE);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeAttributes(final OutputStream out, final Attributes attributes) throws IOException {
+        final Map<String, String> sorted = Maps.newTreeMap();
+        for (final Map.Entry<Object, Object> attribute : attributes.entrySet()) {
+            sorted.put(attribute.getKey().toString(), String.valueOf(attribute.getValue()));
+        }
+        sorted.remove(Attributes.Name.MANIFEST_VERSION.toString());
+        for (final Map.Entry<String, String> attribute : sorted.entrySet()) {
+            writeHeader(out, attribute.getKey(), attribute.getValue());
+        }
+    }
+
+    private static void writeHeader(final OutputStream out, final String name, final String value)
+            throws IOException {
+        final String header = name + ": " + value;
+        final ByteArrayOutputStream line = new ByteArrayOutputStream(MAX_LINE_LENGTH);
+        for (int i = 0; i < header.length();) {
+            final int codePoint = header.codePointAt(i);
+            final byte[] bytes = new String(Character.toChars(codePoint)).getBytes(UTF_8);
+            if (line.size() + bytes.length > MAX_LINE_LENGTH) {
+                line.writeTo(out);
+                out.write(NEWLINE);
+                line.reset();
+                // continuation lines start with a single space
+                line.write(' ');
+            }
+            line.write(bytes);
+            i += Character.charCount(codePoint);
+        }
+        line.writeTo(out);
+        out.write(NEWLINE);
+    }
+
+    /**
+     * Content of an entry which is read while writing it
+     */
+    private interface Content {
+
+        long size() throws Exception;
+
+        long lastModified();
+
+        InputStream open() throws Exception;
+    }
+
+    private static final class ResourceContent implements Content {
+        private final Resource resource;
+
+        private ResourceContent(final Resource resource) {
+            this.resource = resource;
+        }
+
+        @Override
+        public long size() throws Exception {
+            return resource.size();
+        }
+
+        @Override
+        public long lastModified() {
+            return resource.lastModified();
+        }
+
+        @Override
+        public InputStream open() throws Exception {
+            return resource.openInputStream();
+        }
+    }
+
+    private static final class ZipEntryContent implements Content {
+        private final java.util.zip.ZipFile zip;
+        private final ZipEntry entry;
+
+        private ZipEntryContent(final java.util.zip.ZipFile zip, final ZipEntry entry) {
+            this.zip = zip;
+            this.entry = entry;
+        }
+
+        @Override
+        public long size() {
+            return entry.getSize();
+        }
+
+        @Override
+        public long lastModified() {
+            return entry.getTime();
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            return zip.getInputStream(entry);
+        }
+    }
+
+    private static final class PendingEntry {
+        private final String name;
+        private final Content source;
+        private final byte[] content;
+        private final long lastModified;
+
+        private PendingEntry(final String name, final Content source, final byte[] content,
+                final long lastModified) {
+            this.name = name;
+            this.source = source;
+            this.content = content;
+            this.lastModified = lastModified;
+        }
+
+        private long size() throws Exception {
+            return source == null ? content.length : source.size();
+        }
+
+        private byte[] read() throws Exception {
+            if (source == null) {
+                return content;
+            }
+            try (InputStream in = source.open()) {
+                return ByteStreams.toByteArray(in);
+            }
+        }
+    }
+
+    private static final class CompressedEntry {
+        private final ZipArchiveEntry entry;
+        private final byte[] data;
+
+        private CompressedEntry(final ZipArchiveEntry entry, final byte[] data) {
+            this.entry = entry;
+            this.data = data;
+        }
+    }
+
+}
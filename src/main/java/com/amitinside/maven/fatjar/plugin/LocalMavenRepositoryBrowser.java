@@ -10,90 +10,180 @@
 package com.amitinside.maven.fatjar.plugin;
 
 import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
-import static com.amitinside.maven.fatjar.plugin.util.MojoHelper.getUserHome;
-import static com.google.common.base.Preconditions.checkArgument;
-import static java.io.File.separator;
+import static com.google.common.base.Preconditions.*;
 import static org.apache.commons.io.FileUtils.copyFileToDirectory;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.Arrays;
+import java.nio.file.Files;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.function.ObjIntConsumer;
 
 import org.apache.maven.model.Dependency;
-import org.apache.maven.model.Model;
-import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
 import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.eclipse.aether.artifact.Artifact;
 
-import com.amitinside.maven.fatjar.plugin.util.MojoHelper;
+import com.google.common.collect.Lists;
 
 public final class LocalMavenRepositoryBrowser {
 
-    private static final String MAVEN_LOCAL_REPOSITORY = ".m2" + separator + "repository";
+    public enum StagingMode {
+        /** copies the artefacts to the staging directory */
+        COPY,
+        /** hardlinks the artefacts to the staging directory if supported */
+        HARDLINK,
+        /** feeds the artefacts to bnd from the repository location */
+        DIRECT;
+    }
 
-    private final String pomLocation;
     private final File sourceLocation;
-    private final List<String> extensionsToUnarchive;
-
-    private LocalMavenRepositoryBrowser() {
-        pomLocation = Configurer.INSTANCE.getAsString(POM_LOCATION);
-        sourceLocation = (File) Configurer.INSTANCE.get(SOURCE_DIRECTORY);
-        final String[] extensions = (String[]) Configurer.INSTANCE.get(EXTENSION_TO_UNARCHIVE);
-        extensionsToUnarchive = Arrays.asList(extensions);
-
-        checkArgument(!pomLocation.trim().isEmpty(), "POM Location cannot be empty");
+    private final StagingMode stagingMode;
+    private final ArtefactResolver resolver;
+    private final DependencyCollector collector;
+    private final BuildMetrics metrics;
+
+    private LocalMavenRepositoryBrowser(final Configurer configurer, final ArtefactResolver resolver,
+            final Properties versionOverrides) {
+        sourceLocation = (File) configurer.get(SOURCE_DIRECTORY);
+        stagingMode = StagingMode.valueOf(configurer.getAsString(STAGING_MODE).toUpperCase(Locale.ENGLISH));
+        this.resolver = resolver;
+        collector = DependencyCollector.newInstance(configurer, versionOverrides);
+        metrics = BuildMetrics.of(configurer);
+
+        checkNotNull(resolver, "Artefact Resolver cannot be null");
     }
 
-    public static LocalMavenRepositoryBrowser newInstance() {
-        return new LocalMavenRepositoryBrowser();
+    /**
+     * Creates a new browser
+     *
+     * @param configurer the configuration of the current execution
+     * @param resolver the resolver to resolve the dependencies with
+     * @param versionOverrides the version properties overriding the ones
+     *            declared in the POM
+     * @return the browser instance
+     */
+    public static LocalMavenRepositoryBrowser newInstance(final Configurer configurer,
+            final ArtefactResolver resolver, final Properties versionOverrides) {
+        return new LocalMavenRepositoryBrowser(configurer, resolver, versionOverrides);
     }
 
-    public void copyArtefact() throws IOException, XmlPullParserException {
-        final MavenXpp3Reader reader = new MavenXpp3Reader();
-        final Model model = reader.read(new FileReader(pomLocation));
+    /**
+     * Resolves all dependencies declared in the POM and stages them according
+     * to the configured staging mode
+     *
+     * @return the dependencies that have not been staged and need to be used
+     *         from their repository location
+     * @throws IOException if any dependency cannot be resolved or staged
+     * @throws XmlPullParserException if the POM cannot be parsed
+     */
+    public List<File> copyArtefact() throws IOException, XmlPullParserException {
+        return stage(resolveArtefacts());
+    }
 
-        for (final Dependency dep : model.getDependencies()) {
-            final String type = dep.getType();
-            if (!extensionsToUnarchive.contains(type)) {
-                final File dependency = getResource(model, dep);
-                copyFileToDirectory(dependency, sourceLocation);
+    /**
+     * Resolves all dependencies declared in the POM without staging them
+     *
+     * @return the locations of the dependencies in the local repository
+     * @throws IOException if any dependency cannot be resolved
+     * @throws XmlPullParserException if the POM cannot be parsed
+     */
+    public List<File> resolveArtefacts() throws IOException, XmlPullParserException {
+        final List<Dependency> declared = collector.collect();
+        final List<File> dependencies = Lists.newArrayList();
+        try (BuildMetrics.Phase phase = metrics.start("resolution")) {
+            for (final Artifact artifact : resolver.resolve(declared)) {
+                dependencies.add(artifact.getFile());
             }
+            phase.addFiles(dependencies.size());
         }
+        return dependencies;
     }
 
-    private static File getResource(final Model pom, final Dependency dependency) {
-        final String groupId = dependency.getGroupId();
-        final String artifactId = dependency.getArtifactId();
-        final String versionProperty = dependency.getVersion();
-        final String type = dependency.getType();
-        final String version = MojoHelper.getVersion(pom.getProperties(), versionProperty);
-
-        final String home = getUserHome();
+    /**
+     * Resolves all dependencies declared in the POM without staging them and
+     * passes every dependency to the consumer as soon as it is resolved
+     *
+     * @param consumer the consumer of the locations of the dependencies in
+     *            the local repository and the index of their declaration,
+     *            called by the resolution threads
+     * @throws IOException if any dependency cannot be resolved
+     * @throws XmlPullParserException if the POM cannot be parsed
+     */
+    public void resolveArtefacts(final ObjIntConsumer<File> consumer) throws IOException, XmlPullParserException {
+        checkNotNull(consumer, "Consumer cannot be null");
+
+        final List<Dependency> declared = collector.collect();
+        try (BuildMetrics.Phase phase = metrics.start("resolution")) {
+            resolver.resolve(declared, (artifact, index) -> consumer.accept(artifact.getFile(), index));
+            phase.addFiles(declared.size());
+        }
+    }
 
-        final StringBuilder locationBuilder = new StringBuilder();
-        locationBuilder.append(home);
-        locationBuilder.append(separator);
-        locationBuilder.append(MAVEN_LOCAL_REPOSITORY);
-        locationBuilder.append(separator);
+    /**
+     * Stages the specified dependencies according to the configured staging
+     * mode, replacing previously staged ones with the same name
+     *
+     * @param dependencies the locations of the dependencies in the local
+     *            repository
+     * @return the dependencies that have not been staged and need to be used
+     *         from their repository location
+     * @throws IOException if any dependency cannot be staged
+     */
+    public List<File> stage(final Collection<File> dependencies) throws IOException {
+        checkNotNull(dependencies, "Dependencies cannot be null");
+
+        final List<File> unstaged = Lists.newArrayList();
+        try (BuildMetrics.Phase phase = metrics.start("staging")) {
+            for (final File dependency : dependencies) {
+                if (stage(dependency, phase) == dependency) {
+                    unstaged.add(dependency);
+                }
+            }
+        }
+        return unstaged;
+    }
 
-        final String[] groupParts = groupId.split("\\.");
+    /**
+     * Stages a single dependency according to the configured staging mode
+     *
+     * @param dependency the location of the dependency in the local
+     *            repository
+     * @param phase the phase to record the staging in
+     * @return the staged file or the specified dependency if it has not been
+     *         staged
+     * @throws IOException if the dependency cannot be staged
+     */
+    File stage(final File dependency, final BuildMetrics.Phase phase) throws IOException {
+        phase.addFiles(1);
+        switch (stagingMode) {
+            case DIRECT:
+                return dependency;
+            case HARDLINK:
+                return link(dependency, phase);
+            default:
+                return copy(dependency, phase);
+        }
+    }
 
-        for (final String groupPart : groupParts) {
-            locationBuilder.append(groupPart);
-            locationBuilder.append(separator);
+    private File link(final File dependency, final BuildMetrics.Phase phase) throws IOException {
+        final File link = new File(sourceLocation, dependency.getName());
+        try {
+            Files.deleteIfExists(link.toPath());
+            Files.createLink(link.toPath(), dependency.toPath());
+            return link;
+        } catch (final IOException | UnsupportedOperationException e) {
+            // e.g. different file stores
+            return copy(dependency, phase);
         }
-        locationBuilder.append(artifactId);
-        locationBuilder.append(separator);
-        locationBuilder.append(version);
-        locationBuilder.append(separator);
-        locationBuilder.append(artifactId);
-        locationBuilder.append('-');
-        locationBuilder.append(version);
-        locationBuilder.append('.');
-        locationBuilder.append(type);
-
-        return new File(locationBuilder.toString());
+    }
+
+    private File copy(final File dependency, final BuildMetrics.Phase phase) throws IOException {
+        copyFileToDirectory(dependency, sourceLocation);
+        phase.addBytesRead(dependency.length()).addBytesWritten(dependency.length());
+        return new File(sourceLocation, dependency.getName());
     }
 
 }
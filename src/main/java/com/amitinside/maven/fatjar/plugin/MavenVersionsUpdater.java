@@ -10,96 +10,154 @@
 package com.amitinside.maven.fatjar.plugin;
 
 import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
-import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.*;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.*;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.util.List;
-
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.artifact.versioning.ComparableVersion;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
 import org.apache.maven.plugin.BuildPluginManager;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
-import org.twdata.maven.mojoexecutor.MojoExecutor.Element;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
 
-import com.google.common.collect.Lists;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.Sets;
 
 public final class MavenVersionsUpdater {
 
-    private static final String DEPENDENCY_PLUGIN_VERSION = "3.0.2";
     private static final String VERSIONS_PLUGIN_VERSION = "2.5";
+    private static final Pattern VERSION_PROPERTY = Pattern.compile("^\\$\\{(.+)\\}$");
+    private static final String SNAPSHOT = "-SNAPSHOT";
+
+    public enum Strategy {
+        /** executes versions-maven-plugin which updates the POM on disk */
+        PLUGIN,
+        /** overrides the versions for this build only */
+        MEMORY;
+    }
+
     private final String mavenHome;
+    private final String pomLocation;
     private final boolean shouldUpdateVersions;
+    private final Strategy strategy;
+    private final String reportLocation;
     private final MavenProject mavenProject;
     private final MavenSession mavenSession;
     private final BuildPluginManager pluginManager;
-    private final List<String> extensionsToUnarchive;
-    private final File sourceLocation;
-
-    private MavenVersionsUpdater(final MavenProject mavenProject, final MavenSession mavenSession,
-            final BuildPluginManager pluginManager, final List<String> extensionsToUnarchive) {
-        mavenHome = Configurer.INSTANCE.getAsString(MAVEN_LOCATION);
-        sourceLocation = (File) Configurer.INSTANCE.get(SOURCE_DIRECTORY);
-        final String needUpdate = Configurer.INSTANCE.getAsString(UPDATE_VERSION);
+    private final MetadataCache metadataCache;
+
+    private MavenVersionsUpdater(final Configurer configurer, final MavenProject mavenProject,
+            final MavenSession mavenSession, final BuildPluginManager pluginManager,
+            final MetadataCache metadataCache) {
+        mavenHome = configurer.getAsString(MAVEN_LOCATION);
+        pomLocation = configurer.getAsString(POM_LOCATION);
+        final String needUpdate = configurer.getAsString(UPDATE_VERSION);
         shouldUpdateVersions = Boolean.valueOf(needUpdate);
+        strategy = Strategy.valueOf(configurer.getAsString(VERSIONS_UPDATER).toUpperCase(Locale.ENGLISH));
+        reportLocation = configurer.getAsString(VERSIONS_REPORT);
         this.mavenProject = mavenProject;
         this.mavenSession = mavenSession;
         this.pluginManager = pluginManager;
-        this.extensionsToUnarchive = extensionsToUnarchive;
+        this.metadataCache = metadataCache;
 
         checkArgument(!mavenHome.trim().isEmpty(), "Maven Home Location cannot be empty");
+        checkNotNull(metadataCache, "Metadata Cache cannot be null");
     }
 
-    public static MavenVersionsUpdater newInstance(final MavenProject mavenProject, final MavenSession mavenSession,
-            final BuildPluginManager pluginManager, final List<String> extensionsToUnarchive) {
-        return new MavenVersionsUpdater(mavenProject, mavenSession, pluginManager, extensionsToUnarchive);
+    public static MavenVersionsUpdater newInstance(final Configurer configurer, final MavenProject mavenProject,
+            final MavenSession mavenSession, final BuildPluginManager pluginManager,
+            final MetadataCache metadataCache) {
+        return new MavenVersionsUpdater(configurer, mavenProject, mavenSession, pluginManager, metadataCache);
     }
 
-    public void update() throws MojoExecutionException {
-        if (shouldUpdateVersions) {
+    /**
+     * Updates the dependency versions if requested
+     *
+     * @return the version properties to override in this build which is empty
+     *         if the POM has been updated on disk or no update is requested
+     * @throws MojoExecutionException if versions-maven-plugin fails
+     * @throws IOException if the repository metadata cannot be retrieved
+     * @throws XmlPullParserException if the POM cannot be parsed
+     */
+    public Properties update() throws MojoExecutionException, IOException, XmlPullParserException {
+        if (!shouldUpdateVersions) {
+            return new Properties();
+        }
+        if (strategy == Strategy.PLUGIN) {
             executeVersionsMojo();
+            return new Properties();
+        }
+        final Properties overrides = computeVersionOverrides();
+        if (!reportLocation.isEmpty()) {
+            writeReport(overrides);
         }
-        executeDependencyMojo();
+        return overrides;
     }
 
-    private List<Dependency> getArtefactsToUnarchive() {
-        final List<Dependency> deps = Lists.newArrayList();
-        for (final Dependency dep : mavenProject.getModel().getDependencies()) {
-            final String type = dep.getType();
-            if (extensionsToUnarchive.contains(type)) {
-                deps.add(dep);
+    private Properties computeVersionOverrides() throws IOException, XmlPullParserException {
+        final Model model;
+        try (Reader reader = new FileReader(pomLocation)) {
+            model = new MavenXpp3Reader().read(reader);
+        }
+        final ListMultimap<String, Dependency> dependenciesByProperty = ArrayListMultimap.create();
+        for (final Dependency dep : model.getDependencies()) {
+            final Matcher matcher = VERSION_PROPERTY.matcher(dep.getVersion() == null ? "" : dep.getVersion());
+            if (matcher.matches()) {
+                dependenciesByProperty.put(matcher.group(1), dep);
             }
         }
-        return deps;
-    }
-
-    private Element[] convertToElement(final Dependency dependency) {
-        final String groupId = dependency.getGroupId();
-        final String artifactid = dependency.getArtifactId();
-        final String version = dependency.getVersion();
-        final String type = dependency.getType();
-
-        final Element groupIdElement = element(name("groupId"), groupId);
-        final Element artifactidElement = element(name("artifactId"), artifactid);
-        final Element versionElement = element(name("version"), version);
-        final Element typeElement = element(name("type"), type);
-        final Element overwriteElement = element(name("overWrite"), "true");
-        final Element outputDirElement = element(name("outputDirectory"), sourceLocation.getPath());
-
-        final List<Element> elements = Lists.newArrayList(groupIdElement, artifactidElement, versionElement,
-                typeElement, overwriteElement, outputDirElement);
-
-        return elements.toArray(new Element[elements.size()]);
+        final Properties overrides = new Properties();
+        for (final Map.Entry<String, List<Dependency>> entry : Multimaps.asMap(dependenciesByProperty).entrySet()) {
+            final String property = entry.getKey();
+            final String current = model.getProperties().getProperty(property);
+            if (current == null) {
+                continue;
+            }
+            // a shared property can only be updated to a version available for all artefacts
+            Set<String> candidates = null;
+            for (final Dependency dep : entry.getValue()) {
+                final Set<String> versions = Sets.newHashSet(metadataCache.getVersions(dep.getGroupId(),
+                        dep.getArtifactId()));
+                versions.removeIf(v -> v.endsWith(SNAPSHOT));
+                candidates = candidates == null ? versions : Sets.intersection(candidates, versions).immutableCopy();
+            }
+            //@formatter:off
+            candidates.stream()
+                      .map(ComparableVersion::new)
+                      .max(ComparableVersion::compareTo)
+                      .filter(v -> v.compareTo(new ComparableVersion(current)) > 0)
+                      .ifPresent(v -> overrides.setProperty(property, v.toString()));
+            //@formatter:on
+        }
+        return overrides;
     }
 
-    private Element[] convertToArtefactItems() {
-        final List<Element> artifactItems = Lists.newArrayList();
-        for (final Dependency dep : getArtefactsToUnarchive()) {
-            final Element artifactItem = element(name("artifactItem"), convertToElement(dep));
-            artifactItems.add(artifactItem);
+    private void writeReport(final Properties overrides) throws IOException {
+        final File report = new File(reportLocation);
+        FileUtils.forceMkdir(report.getAbsoluteFile().getParentFile());
+        try (OutputStream out = new FileOutputStream(report)) {
+            overrides.store(out, "Dependency versions chosen by fatjar-maven-plugin");
         }
-        return artifactItems.toArray(new Element[artifactItems.size()]);
     }
 
     private void executeVersionsMojo() throws MojoExecutionException {
@@ -122,25 +180,4 @@ public final class MavenVersionsUpdater {
         //@formatter:on
     }
 
-    private void executeDependencyMojo() throws MojoExecutionException {
-        //@formatter:off
-        executeMojo(
-                plugin(
-                    groupId("org.apache.maven.plugins"),
-                    artifactId("maven-dependency-plugin"),
-                    version(DEPENDENCY_PLUGIN_VERSION)
-                ),
-                goal("copy"),
-                configuration(
-                    element(name("artifactItems"), convertToArtefactItems())
-                ),
-                executionEnvironment(
-                    mavenProject,
-                    mavenSession,
-                    pluginManager
-                )
-            );
-        //@formatter:on
-    }
-
 }
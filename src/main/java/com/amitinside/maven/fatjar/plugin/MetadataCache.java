@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.google.common.base.Preconditions.*;
+import static java.io.File.separator;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Reader;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Writer;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.metadata.DefaultMetadata;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.MetadataRequest;
+import org.eclipse.aether.resolution.MetadataResult;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Local cache of the merged {@code maven-metadata.xml} of all repositories
+ * which is refreshed as soon as it is older than the configured time to live
+ */
+public final class MetadataCache {
+
+    private static final String METADATA_FILE = "maven-metadata.xml";
+
+    private final RepositorySystem repositorySystem;
+    private final RepositorySystemSession session;
+    private final List<RemoteRepository> remoteRepositories;
+    private final File cacheDirectory;
+    private final long timeToLive;
+
+    private MetadataCache(final RepositorySystem repositorySystem, final RepositorySystemSession session,
+            final List<RemoteRepository> remoteRepositories, final File cacheDirectory, final long ttlInMinutes) {
+        checkNotNull(repositorySystem, "Repository System cannot be null");
+        checkNotNull(session, "Repository System Session cannot be null");
+        checkNotNull(remoteRepositories, "Remote Repositories cannot be null");
+        checkNotNull(cacheDirectory, "Cache directory cannot be null");
+        checkArgument(ttlInMinutes >= 0, "Time to live cannot be negative");
+
+        this.repositorySystem = repositorySystem;
+        this.session = session;
+        this.remoteRepositories = remoteRepositories;
+        this.cacheDirectory = cacheDirectory;
+        timeToLive = TimeUnit.MINUTES.toMillis(ttlInMinutes);
+    }
+
+    /**
+     * Creates a new cache instance
+     *
+     * @param repositorySystem the repository system
+     * @param session the repository system session
+     * @param remoteRepositories the repositories to retrieve metadata from
+     * @param cacheDirectory the root directory of the cache
+     * @param ttlInMinutes the time after which cached metadata is retrieved
+     *            again
+     * @return the cache instance
+     */
+    public static MetadataCache newInstance(final RepositorySystem repositorySystem,
+            final RepositorySystemSession session, final List<RemoteRepository> remoteRepositories,
+            final File cacheDirectory, final long ttlInMinutes) {
+        return new MetadataCache(repositorySystem, session, remoteRepositories, cacheDirectory, ttlInMinutes);
+    }
+
+    /**
+     * Returns all known versions of the specified artefact
+     *
+     * @param groupId the group ID
+     * @param artifactId the artifact ID
+     * @return the versions available in the local and remote repositories
+     * @throws IOException if the metadata cannot be retrieved
+     */
+    public List<String> getVersions(final String groupId, final String artifactId) throws IOException {
+        final File cached = new File(cacheDirectory, groupId + separator + artifactId + separator + METADATA_FILE);
+        if (cached.isFile() && System.currentTimeMillis() - cached.lastModified() < timeToLive) {
+            return read(cached).getVersioning().getVersions();
+        }
+        final Versioning versioning = new Versioning();
+        final List<MetadataRequest> requests = Lists.newArrayList();
+        //@formatter:off
+        final DefaultMetadata metadata = new DefaultMetadata(groupId,
+                                                             artifactId,
+                                                             METADATA_FILE,
+                                                             org.eclipse.aether.metadata.Metadata.Nature.RELEASE_OR_SNAPSHOT);
+        //@formatter:on
+        // the local repository is requested without a remote repository
+        requests.add(new MetadataRequest(metadata));
+        for (final RemoteRepository repository : remoteRepositories) {
+            requests.add(new MetadataRequest(metadata, repository, null));
+        }
+        for (final MetadataResult result : repositorySystem.resolveMetadata(session, requests)) {
+            if (!result.isResolved() || result.getMetadata().getFile() == null) {
+                continue;
+            }
+            final Versioning resolved = read(result.getMetadata().getFile()).getVersioning();
+            if (resolved == null) {
+                continue;
+            }
+            for (final String version : resolved.getVersions()) {
+                if (!versioning.getVersions().contains(version)) {
+                    versioning.addVersion(version);
+                }
+            }
+        }
+        final Metadata merged = new Metadata();
+        merged.setGroupId(groupId);
+        merged.setArtifactId(artifactId);
+        merged.setVersioning(versioning);
+        write(cached, merged);
+        return versioning.getVersions();
+    }
+
+    private static Metadata read(final File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return new MetadataXpp3Reader().read(in, false);
+        } catch (final XmlPullParserException e) {
+            throw new IOException("Invalid repository metadata " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void write(final File file, final Metadata metadata) throws IOException {
+        FileUtils.forceMkdir(file.getParentFile());
+        final File temp = new File(file.getPath() + '.' + UUID.randomUUID());
+        try (OutputStream out = new FileOutputStream(temp)) {
+            new MetadataXpp3Writer().write(out, metadata);
+        }
+        Files.move(temp.toPath(), file.toPath(), REPLACE_EXISTING);
+    }
+
+}
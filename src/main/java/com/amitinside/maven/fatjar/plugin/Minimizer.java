@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import com.amitinside.maven.fatjar.plugin.util.ClassFileHelper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Reduces the classpath of a bundle to the classes reachable from the
+ * configured roots. Reachability is computed on class level from the constant
+ * pools of the class files, which over-approximates the actual references.
+ * Resources other than classes are always kept.
+ */
+public final class Minimizer {
+
+    private static final String CLASS_EXTENSION = ".class";
+    private static final String SERVICES_DIRECTORY = "META-INF/services/";
+    private static final Pattern SIGNATURE_FILE = Pattern.compile("META-INF/[^/]+\\.(SF|RSA|DSA|EC)");
+
+    private final List<PathMatcher> roots;
+    private final List<PathMatcher> keeps;
+
+    private Minimizer(final Configurer configurer) {
+        final String[] configuredRoots = (String[]) configurer.get(MINIMIZATION_ROOTS);
+        final String[] configuredKeeps = (String[]) configurer.get(MINIMIZATION_KEEPS);
+        roots = matchers(configuredRoots == null ? new String[0] : configuredRoots, true);
+        keeps = matchers(configuredKeeps == null ? new String[0] : configuredKeeps, false);
+    }
+
+    public static Minimizer newInstance(final Configurer configurer) {
+        return new Minimizer(configurer);
+    }
+
+    /**
+     * Writes the classes reachable from the roots and the resources of the
+     * classpath to a single JAR
+     *
+     * @param bundle the bundle whose main class is an additional root
+     * @param classpath the JARs to minimize, the first occurrence of an entry
+     *            wins
+     * @param minimizedJar the JAR to write
+     * @param report the file to list the removed classes in
+     * @throws IOException if the classpath cannot be read or the JAR cannot be
+     *             written
+     */
+    public void minimize(final Bundle bundle, final List<File> classpath, final File minimizedJar,
+            final File report) throws IOException {
+        checkNotNull(bundle, "Bundle cannot be null");
+        checkNotNull(classpath, "Classpath cannot be null");
+        checkArgument(!roots.isEmpty() || !keeps.isEmpty() || bundle.getMainClass() != null,
+                "Minimization requires roots, keep rules or a main class");
+
+        final Map<File, ZipFile> zips = Maps.newLinkedHashMap();
+        try {
+            final Map<String, File> classes = Maps.newTreeMap();
+            final Map<String, File> resources = Maps.newTreeMap();
+            for (final File jar : classpath) {
+                final ZipFile zip = new ZipFile(jar);
+                zips.put(jar, zip);
+                for (final Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                    final ZipEntry entry = e.nextElement();
+                    final String name = entry.getName();
+                    if (entry.isDirectory() || isExcluded(name)) {
+                        continue;
+                    }
+                    if (name.endsWith(CLASS_EXTENSION) && !name.startsWith("META-INF/")) {
+                        classes.putIfAbsent(name.substring(0, name.length() - CLASS_EXTENSION.length()), jar);
+                    } else {
+                        resources.putIfAbsent(name, jar);
+                    }
+                }
+            }
+            final Set<String> reachable = computeReachable(bundle, classes, resources, zips);
+            writeJar(minimizedJar, reachable, classes, resources, zips);
+            writeReport(report, reachable, classes);
+        } finally {
+            for (final ZipFile zip : zips.values()) {
+                zip.close();
+            }
+        }
+    }
+
+    private Set<String> computeReachable(final Bundle bundle, final Map<String, File> classes,
+            final Map<String, File> resources, final Map<File, ZipFile> zips) throws IOException {
+        final Deque<String> queue = new ArrayDeque<>();
+        for (final String name : classes.keySet()) {
+            final String path = name + CLASS_EXTENSION;
+            if (matches(roots, name) || matches(keeps, path)) {
+                queue.add(name);
+            }
+        }
+        final String mainClass = bundle.getMainClass();
+        if (mainClass != null) {
+            queue.add(mainClass.replace('.', '/'));
+        }
+        // service providers are reachable as soon as their service is
+        final Map<String, List<String>> providers = Maps.newHashMap();
+        for (final String resource : resources.keySet()) {
+            if (resource.startsWith(SERVICES_DIRECTORY) && resource.length() > SERVICES_DIRECTORY.length()) {
+                final String service = resource.substring(SERVICES_DIRECTORY.length()).replace('.', '/');
+                providers.put(service, readProviders(zips.get(resources.get(resource)), resource));
+            }
+        }
+
+        final Set<String> reachable = Sets.newHashSet();
+        while (!queue.isEmpty()) {
+            final String name = queue.removeFirst();
+            if (!classes.containsKey(name) || !reachable.add(name)) {
+                continue;
+            }
+            final ZipFile zip = zips.get(classes.get(name));
+            final byte[] bytes;
+            try (InputStream in = zip.getInputStream(zip.getEntry(name + CLASS_EXTENSION))) {
+                bytes = ByteStreams.toByteArray(in);
+            }
+            for (final String reference : ClassFileHelper.getReferencedTypes(bytes, true)) {
+                if (classes.containsKey(reference) && !reachable.contains(reference)) {
+                    queue.add(reference);
+                }
+            }
+            final List<String> implementations = providers.get(name);
+            if (implementations != null) {
+                queue.addAll(implementations);
+            }
+        }
+        return reachable;
+    }
+
+    private static List<String> readProviders(final ZipFile zip, final String resource) throws IOException {
+        final List<String> implementations = Lists.newArrayList();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(zip.getInputStream(zip.getEntry(resource)), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int comment = line.indexOf('#');
+                final String implementation = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                if (!implementation.isEmpty()) {
+                    implementations.add(implementation.replace('.', '/'));
+                }
+            }
+        }
+        return implementations;
+    }
+
+    private static void writeJar(final File minimizedJar, final Set<String> reachable,
+            final Map<String, File> classes, final Map<String, File> resources, final Map<File, ZipFile> zips)
+            throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(
+                new BufferedOutputStream(new FileOutputStream(minimizedJar)))) {
+            for (final Map.Entry<String, File> clazz : classes.entrySet()) {
+                if (reachable.contains(clazz.getKey())) {
+                    copy(out, zips.get(clazz.getValue()), clazz.getKey() + CLASS_EXTENSION);
+                }
+            }
+            for (final Map.Entry<String, File> resource : resources.entrySet()) {
+                copy(out, zips.get(resource.getValue()), resource.getKey());
+            }
+        }
+    }
+
+    private static void copy(final ZipOutputStream out, final ZipFile zip, final String name) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+            ByteStreams.copy(in, out);
+        }
+        out.closeEntry();
+    }
+
+    private static void writeReport(final File report, final Set<String> reachable, final Map<String, File> classes)
+            throws IOException {
+        final List<String> lines = Lists.newArrayList();
+        lines.add("# kept " + reachable.size() + " of " + classes.size() + " classes, removed:");
+        for (final Map.Entry<String, File> clazz : classes.entrySet()) {
+            if (!reachable.contains(clazz.getKey())) {
+                lines.add(clazz.getKey().replace('/', '.') + " (" + clazz.getValue().getName() + ")");
+            }
+        }
+        Files.write(report.toPath(), lines, UTF_8);
+    }
+
+    private static boolean isExcluded(final String name) {
+        // the manifest and the signatures of the original JARs are not valid anymore
+        return JarFile.MANIFEST_NAME.equals(name) || SIGNATURE_FILE.matcher(name).matches();
+    }
+
+    private static List<PathMatcher> matchers(final String[] patterns, final boolean classNames) {
+        final List<PathMatcher> matchers = Lists.newArrayList();
+        //@formatter:off
+        Arrays.stream(patterns)
+              .map(p -> classNames ? p.replace('.', '/') : p)
+              .map(p -> FileSystems.getDefault().getPathMatcher("glob:" + p))
+              .forEach(matchers::add);
+        //@formatter:on
+        return matchers;
+    }
+
+    private static boolean matches(final List<PathMatcher> matchers, final String name) {
+        return matchers.stream().anyMatch(m -> m.matches(Paths.get(name)));
+    }
+
+}
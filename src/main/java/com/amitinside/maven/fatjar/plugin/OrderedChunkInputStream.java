@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Concatenates chunks of data which are produced ahead of the reader on an
+ * executor. At most the specified number of chunks is produced ahead, which
+ * bounds the memory. The chunks are read in the order of their producers,
+ * independent of the order in which they complete, and a producer returning
+ * {@code null} ends the stream. Closing the stream cancels the pending
+ * producers and closes the specified resource.
+ */
+final class OrderedChunkInputStream extends InputStream {
+
+    private final Iterator<Callable<byte[]>> producers;
+    private final ExecutorService executor;
+    private final int window;
+    private final Closeable resource;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] chunk = new byte[0];
+    private int position;
+    private boolean finished;
+
+    OrderedChunkInputStream(final Iterator<Callable<byte[]>> producers, final ExecutorService executor,
+            final int window, final Closeable resource) {
+        checkNotNull(producers, "Producers cannot be null");
+        checkNotNull(executor, "Executor cannot be null");
+        checkArgument(window > 0, "Window must be positive");
+        checkNotNull(resource, "Resource cannot be null");
+
+        this.producers = producers;
+        this.executor = executor;
+        this.window = window;
+        this.resource = resource;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (position == chunk.length) {
+            if (!nextChunk()) {
+                return -1;
+            }
+        }
+        final int count = Math.min(length, chunk.length - position);
+        System.arraycopy(chunk, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return chunk.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        cancel();
+        resource.close();
+    }
+
+    private void cancel() {
+        finished = true;
+        for (final Future<byte[]> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+    }
+
+    private boolean nextChunk() throws IOException {
+        if (finished) {
+            return false;
+        }
+        while (pending.size() < window && producers.hasNext()) {
+            pending.add(executor.submit(producers.next()));
+        }
+        if (pending.isEmpty()) {
+            finished = true;
+            return false;
+        }
+        final byte[] next;
+        try {
+            next = pending.removeFirst().get();
+        } catch (final ExecutionException e) {
+            cancel();
+            final Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        } catch (final InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new IOException("Reading ahead has been interrupted", e);
+        }
+        if (next == null) {
+            cancel();
+            return false;
+        }
+        chunk = next;
+        position = 0;
+        return true;
+    }
+
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Sidecar index of a fat JAR mapping its entries to the SHA-256 of their
+ * content together with the settings of the writer which compressed them. The
+ * entries whose content did not change since the previous build can be copied
+ * from the previous fat JAR without compressing them again, no matter which
+ * source they have been taken from, as long as the writer settings did not
+ * change either.
+ */
+public final class PatchIndex {
+
+    private static final String INDEX_EXTENSION = ".index";
+    private static final String TARGET_PREFIX = "target=";
+    private static final String SETTINGS_PREFIX = "settings=";
+    private static final String ENTRY_PREFIX = "entry=";
+    private static final char SEPARATOR = '\t';
+
+    private final Map<String, String> entries;
+    private String writerSettings;
+    private int reusedEntries;
+
+    private PatchIndex(final Map<String, String> entries, final String writerSettings) {
+        this.entries = entries;
+        this.writerSettings = writerSettings;
+    }
+
+    /**
+     * Creates the index of a bundle whose entries are taken from the specified
+     * JARs. An entry contained in more than one JAR is attributed to the first
+     * one like on the classpath of bnd.
+     *
+     * @param jars the classpath of the bundle
+     * @return the index instance
+     * @throws IOException if any of the JARs cannot be read
+     */
+    public static PatchIndex ofClasspath(final List<File> jars) throws IOException {
+        checkNotNull(jars, "Classpath cannot be null");
+
+        final Map<String, String> entries = Maps.newHashMap();
+        for (final File jar : jars) {
+            try (ZipFile zip = new ZipFile(jar)) {
+                for (final Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                    final ZipEntry entry = e.nextElement();
+                    if (entry.isDirectory() || entries.containsKey(entry.getName())) {
+                        continue;
+                    }
+                    final Hasher hasher = Hashing.sha256().newHasher();
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        ByteStreams.copy(in, Funnels.asOutputStream(hasher));
+                    }
+                    entries.put(entry.getName(), hasher.hash().toString());
+                }
+            }
+        }
+        return new PatchIndex(entries, "");
+    }
+
+    /**
+     * Creates the index of a bundle whose entries are the specified files
+     *
+     * @param files the files mapped to their entry names
+     * @return the index instance
+     * @throws IOException if any of the files cannot be read
+     */
+    public static PatchIndex ofFiles(final Map<String, File> files) throws IOException {
+        checkNotNull(files, "Files cannot be null");
+
+        final Map<String, String> entries = Maps.newHashMap();
+        for (final Map.Entry<String, File> file : files.entrySet()) {
+            entries.put(file.getKey(),
+                    com.google.common.io.Files.asByteSource(file.getValue()).hash(Hashing.sha256()).toString());
+        }
+        return new PatchIndex(entries, "");
+    }
+
+    /**
+     * Loads the index stored next to the specified fat JAR
+     *
+     * @param target the fat JAR
+     * @return the index or {@code null} if there is none or if the fat JAR
+     *         has been modified after storing the index
+     * @throws IOException if the index cannot be read
+     */
+    public static PatchIndex load(final File target) throws IOException {
+        checkNotNull(target, "Target cannot be null");
+
+        final File indexFile = indexFile(target);
+        if (!target.isFile() || !indexFile.isFile()) {
+            return null;
+        }
+        final List<String> lines = Files.readAllLines(indexFile.toPath(), UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(TARGET_PREFIX + identify(target))) {
+            return null;
+        }
+        String settings = null;
+        final Map<String, String> entries = Maps.newHashMap();
+        for (final String line : lines.subList(1, lines.size())) {
+            if (line.startsWith(SETTINGS_PREFIX)) {
+                settings = line.substring(SETTINGS_PREFIX.length());
+            } else if (line.startsWith(ENTRY_PREFIX)) {
+                final List<String> fields = Splitter.on(SEPARATOR).splitToList(line.substring(ENTRY_PREFIX.length()));
+                if (fields.size() == 2) {
+                    entries.put(fields.get(0), fields.get(1));
+                }
+            }
+        }
+        // the entries of an index without settings are compressed again
+        return settings == null ? null : new PatchIndex(entries, settings);
+    }
+
+    /**
+     * Stores the index next to the specified fat JAR
+     *
+     * @param target the fat JAR which has been written from the indexed
+     *            entries
+     * @throws IOException if the index cannot be written
+     */
+    public void store(final File target) throws IOException {
+        checkNotNull(target, "Target cannot be null");
+
+        try (Writer writer = Files.newBufferedWriter(indexFile(target).toPath(), UTF_8)) {
+            writer.write(TARGET_PREFIX + identify(target));
+            writer.write('\n');
+            writer.write(SETTINGS_PREFIX + writerSettings);
+            writer.write('\n');
+            for (final Map.Entry<String, String> entry : entries.entrySet()) {
+                final String name = entry.getKey();
+                if (name.indexOf(SEPARATOR) >= 0 || name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0) {
+                    // such entries are always compressed again
+                    continue;
+                }
+                writer.write(ENTRY_PREFIX + name + SEPARATOR + entry.getValue());
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Checks whether the specified entry has the same content as in the
+     * previous build and has been compressed with the same writer settings
+     *
+     * @param name the name of the entry
+     * @param previous the index of the previous build
+     * @return {@code true} if the entry is unchanged, otherwise {@code false}
+     */
+    public boolean isUnchanged(final String name, final PatchIndex previous) {
+        if (previous == null || !writerSettings.equals(previous.writerSettings)) {
+            return false;
+        }
+        final String current = entries.get(name);
+        return current != null && current.equals(previous.entries.get(name));
+    }
+
+    /**
+     * @return the number of entries which have been copied from the previous
+     *         fat JAR
+     */
+    public int getReusedEntries() {
+        return reusedEntries;
+    }
+
+    void addReusedEntry() {
+        reusedEntries++;
+    }
+
+    void setWriterSettings(final String writerSettings) {
+        this.writerSettings = checkNotNull(writerSettings, "Writer settings cannot be null");
+    }
+
+    private static File indexFile(final File target) {
+        return new File(target.getAbsoluteFile().getParentFile(), target.getName() + INDEX_EXTENSION);
+    }
+
+    private static String identify(final File target) {
+        return target.length() + ":" + target.lastModified();
+    }
+
+}
@@ -0,0 +1,335 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.*;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Prepares a built bundle for a fast startup of the applications using it.
+ * The classes are taken in the order in which they are loaded at startup,
+ * either from a recorded class list or from a training run of the main class
+ * of the bundle. The entries of these classes are moved to the front of the
+ * bundle, so they are read contiguously, and the class list usable for an
+ * AppCDS archive as well as an index of the entries of every package are
+ * stored next to the bundle. Only the classes contained in the bundle are kept,
+ * the ones of the JDK are shared by the default CDS archive anyway. Optionally,
+ * the AppCDS archive is dumped as well with the running JDK, which requires a
+ * commercial Oracle JDK on Java 8 and 9.
+ */
+public final class StartupOptimizer {
+
+    private static final String CLASS_LIST_EXTENSION = ".classlist";
+    private static final String PACKAGE_INDEX_EXTENSION = ".packages";
+    private static final String ARCHIVE_EXTENSION = ".jsa";
+    private static final String CLASS_EXTENSION = ".class";
+    private static final String MANIFEST_DIRECTORY = "META-INF/";
+    private static final int OPEN_APP_CDS_VERSION = 10;
+    private static final int DEFAULT_APP_CDS_VERSION = 11;
+
+    private final File classList;
+    private final boolean training;
+    private final String[] trainingArguments;
+    private final long trainingTimeout;
+    private final boolean archive;
+
+    private StartupOptimizer(final Configurer configurer) {
+        final String list = configurer.getAsString(STARTUP_CLASS_LIST);
+        classList = list.trim().isEmpty() ? null : new File(list);
+        training = Boolean.valueOf(configurer.getAsString(STARTUP_TRAINING));
+        final String[] arguments = (String[]) configurer.get(STARTUP_TRAINING_ARGUMENTS);
+        trainingArguments = arguments == null ? new String[0] : arguments;
+        trainingTimeout = Long.parseLong(configurer.getAsString(STARTUP_TRAINING_TIMEOUT));
+        archive = Boolean.valueOf(configurer.getAsString(STARTUP_ARCHIVE));
+
+        checkArgument(classList == null || !training, "Either a Startup Class List or a Training Run can be used");
+        checkArgument(trainingTimeout > 0, "Startup Training Timeout must be positive");
+    }
+
+    public static StartupOptimizer newInstance(final Configurer configurer) {
+        return new StartupOptimizer(configurer);
+    }
+
+    /**
+     * @return {@code true} if a class list or a training run is configured
+     */
+    public boolean isEnabled() {
+        return classList != null || training;
+    }
+
+    /**
+     * Optimizes the specified bundle for startup
+     *
+     * @param bundle the definition of the bundle
+     * @param target the built bundle
+     * @param workDirectory the directory to store temporary files in
+     * @return the classes in the order in which they are loaded at startup
+     * @throws Exception if the class list cannot be obtained or the bundle
+     *             cannot be rewritten
+     */
+    public List<String> optimize(final Bundle bundle, final File target, final File workDirectory)
+            throws Exception {
+        checkNotNull(bundle, "Bundle cannot be null");
+        checkNotNull(target, "Target cannot be null");
+        checkNotNull(workDirectory, "Working Directory cannot be null");
+
+        final List<String> classes;
+        if (training) {
+            final File recorded = File.createTempFile("training", CLASS_LIST_EXTENSION, workDirectory);
+            try {
+                train(bundle, target, recorded);
+                classes = retainContained(target, readClassList(recorded));
+            } finally {
+                Files.deleteIfExists(recorded.toPath());
+            }
+        } else {
+            classes = retainContained(target, readClassList(classList));
+        }
+        // the entries are identical, only their order changes
+        final PatchIndex index = PatchIndex.load(target);
+        final List<String> entries = reorder(target, classes);
+        if (index != null) {
+            index.store(target);
+        }
+        final File list = sibling(target, CLASS_LIST_EXTENSION);
+        Files.write(list.toPath(), classes, UTF_8);
+        writePackageIndex(entries, sibling(target, PACKAGE_INDEX_EXTENSION));
+        if (archive) {
+            dumpArchive(target, list);
+        }
+        return classes;
+    }
+
+    private void dumpArchive(final File target, final File list) throws Exception {
+        final int version = javaVersion();
+        final List<String> command = Lists.newArrayList(javaExecutable(), "-Xshare:dump");
+        // AppCDS is a commercial feature before Java 10 and enabled by default since Java 11
+        if (version < OPEN_APP_CDS_VERSION) {
+            command.add("-XX:+UnlockCommercialFeatures");
+        }
+        if (version < DEFAULT_APP_CDS_VERSION) {
+            command.add("-XX:+UseAppCDS");
+        }
+        //@formatter:off
+        Collections.addAll(command,
+                           "-XX:SharedClassListFile=" + list.getAbsolutePath(),
+                           "-XX:SharedArchiveFile=" + sibling(target, ARCHIVE_EXTENSION).getAbsolutePath(),
+                           "-cp",
+                           target.getAbsolutePath());
+        //@formatter:on
+        execute(command, version < OPEN_APP_CDS_VERSION
+                ? "AppCDS archive dump (requires an Oracle JDK on Java " + version + ")"
+                : "AppCDS archive dump");
+    }
+
+    private static List<String> retainContained(final File target, final List<String> classes) throws IOException {
+        try (ZipFile jar = new ZipFile(target)) {
+            final List<String> contained = Lists.newArrayList();
+            for (final String name : classes) {
+                if (jar.getEntry(name + CLASS_EXTENSION) != null) {
+                    contained.add(name);
+                }
+            }
+            return contained;
+        }
+    }
+
+    private static int javaVersion() {
+        // 1.8 on Java 8, 9 and later on Java 9 and later
+        final String version = System.getProperty("java.specification.version");
+        return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+    }
+
+    /**
+     * Reads a class list as written by {@code -XX:DumpLoadedClassList} or
+     * logged by {@code -Xlog:class+load}
+     *
+     * @param file the class list
+     * @return the binary names of the classes using slashes in the order of
+     *         the list without duplicates
+     * @throws IOException if the list cannot be read
+     */
+    public static List<String> readClassList(final File file) throws IOException {
+        checkNotNull(file, "Class List cannot be null");
+
+        final Set<String> classes = Sets.newLinkedHashSet();
+        for (final String line : Files.readAllLines(file.toPath(), UTF_8)) {
+            String value = line.trim();
+            if (value.startsWith("[")) {
+                // unified logging decorations precede the class name
+                value = value.substring(value.lastIndexOf(']') + 1).trim();
+            }
+            if (value.isEmpty() || value.startsWith("#") || value.startsWith("@")) {
+                continue;
+            }
+            String name = Splitter.on(' ').split(value).iterator().next();
+            if (name.endsWith(CLASS_EXTENSION)) {
+                name = name.substring(0, name.length() - CLASS_EXTENSION.length());
+            }
+            classes.add(name.replace('.', '/'));
+        }
+        return Lists.newArrayList(classes);
+    }
+
+    private void train(final Bundle bundle, final File target, final File recorded) throws Exception {
+        String mainClass = bundle.getMainClass();
+        if (mainClass == null) {
+            try (JarFile jar = new JarFile(target)) {
+                final Manifest manifest = jar.getManifest();
+                mainClass = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS);
+            }
+        }
+        checkState(mainClass != null, "Training run of %s requires a Main Class", bundle.getBundleSymbolicName());
+
+        //@formatter:off
+        final List<String> command = Lists.newArrayList(javaExecutable(),
+                                                        "-Xshare:off",
+                                                        "-XX:DumpLoadedClassList=" + recorded.getAbsolutePath(),
+                                                        "-cp",
+                                                        target.getAbsolutePath(),
+                                                        mainClass);
+        //@formatter:on
+        Collections.addAll(command, trainingArguments);
+        execute(command, "Training run of " + bundle.getBundleSymbolicName());
+    }
+
+    private void execute(final List<String> command, final String description) throws Exception {
+        final Process process = new ProcessBuilder(command).inheritIO().start();
+        try {
+            final boolean finished = process.waitFor(trainingTimeout, TimeUnit.SECONDS);
+            checkState(finished, "%s did not finish within %s seconds", description, trainingTimeout);
+            checkState(process.exitValue() == 0, "%s failed with exit code %s", description, process.exitValue());
+        } finally {
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * Rewrites the bundle with the manifest first, followed by the specified
+     * classes and all other entries in their previous order. The entries are
+     * copied without compressing them again.
+     *
+     * @return the names of the entries in their new order
+     */
+    /**
+     * Moves the specified classes to the front of the bundle. The bundle is
+     * left untouched if its entries are in that order already.
+     *
+     * @return the entries of the bundle in their new order
+     */
+    private static List<String> reorder(final File target, final List<String> classes) throws IOException {
+        final File temp = new File(target.getAbsoluteFile().getParentFile(),
+                '.' + target.getName() + '.' + UUID.randomUUID());
+        final List<String> written = Lists.newArrayList();
+        try {
+            try (ZipFile jar = new ZipFile(target)) {
+                final List<String> physical = Lists.newArrayList();
+                final Map<String, ZipArchiveEntry> entries = Maps.newLinkedHashMap();
+                for (final ZipArchiveEntry entry : Collections.list(jar.getEntriesInPhysicalOrder())) {
+                    physical.add(entry.getName());
+                    entries.putIfAbsent(entry.getName(), entry);
+                }
+                // JarInputStream requires the manifest to be the first entry
+                final List<String> order = Lists.newArrayList(MANIFEST_DIRECTORY, JarFile.MANIFEST_NAME);
+                classes.forEach(c -> order.add(c + CLASS_EXTENSION));
+                order.addAll(entries.keySet());
+                final Set<String> ordered = Sets.newLinkedHashSet();
+                for (final String name : order) {
+                    if (entries.containsKey(name)) {
+                        ordered.add(name);
+                    }
+                }
+                written.addAll(ordered);
+                if (written.equals(physical)) {
+                    // already in order, so the bundle is not touched
+                    return written;
+                }
+                try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(temp)))) {
+                    out.setUseZip64(Zip64Mode.AsNeeded);
+                    for (final String name : written) {
+                        final ZipArchiveEntry entry = entries.get(name);
+                        try (InputStream in = jar.getRawInputStream(entry)) {
+                            out.addRawArchiveEntry(entry, in);
+                        }
+                    }
+                    out.finish();
+                }
+            }
+            try {
+                Files.move(temp.toPath(), target.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), target.toPath(), REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        return written;
+    }
+
+    private static void writePackageIndex(final List<String> entries, final File index) throws IOException {
+        final SortedMap<String, List<String>> packages = Maps.newTreeMap();
+        for (final String entry : entries) {
+            if (entry.endsWith("/")) {
+                continue;
+            }
+            final int separator = entry.lastIndexOf('/');
+            final String packageName = separator < 0 ? "" : entry.substring(0, separator + 1);
+            packages.computeIfAbsent(packageName, p -> Lists.newArrayList()).add(entry.substring(separator + 1));
+        }
+        try (Writer writer = Files.newBufferedWriter(index.toPath(), UTF_8)) {
+            for (final Map.Entry<String, List<String>> entry : packages.entrySet()) {
+                writer.write(entry.getKey() + '=' + String.join(",", entry.getValue()));
+                writer.write('\n');
+            }
+        }
+    }
+
+    private static File sibling(final File target, final String extension) {
+        return new File(target.getAbsoluteFile().getParentFile(), target.getName() + extension);
+    }
+
+    private static String javaExecutable() {
+        return System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    }
+
+}
@@ -0,0 +1,387 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin.util;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public final class ClassFileHelper {
+
+    private ClassFileHelper() {
+        throw new IllegalAccessError("Cannot instantiate");
+    }
+
+    /**
+     * Collects the internal names of all classes referenced from the constant
+     * pool of the specified class file
+     *
+     * @param classFile the content of the class file
+     * @param includeStrings {@code true} to include all strings as potential
+     *            class names to cover most reflective lookups
+     * @return the referenced class names
+     * @throws IOException if the class file is malformed
+     */
+    public static Set<String> getReferencedTypes(final byte[] classFile, final boolean includeStrings)
+            throws IOException {
+        checkNotNull(classFile, "Class file cannot be null");
+
+        final Set<String> references = Sets.newHashSet();
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+        // magic, minor and major version
+        in.skipBytes(8);
+        final int count = in.readUnsignedShort();
+        final String[] utf8 = new String[count];
+        final List<Integer> classIndexes = Lists.newArrayList();
+        // only descriptors and signatures are scanned for types, not string constants
+        final Set<Integer> descriptorIndexes = Sets.newHashSet();
+        for (int i = 1; i < count; i++) {
+            final int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    utf8[i] = in.readUTF();
+                    break;
+                case 7: // Class
+                    classIndexes.add(in.readUnsignedShort());
+                    break;
+                case 12: // NameAndType
+                    in.skipBytes(2);
+                    descriptorIndexes.add(in.readUnsignedShort());
+                    break;
+                case 16: // MethodType
+                    descriptorIndexes.add(in.readUnsignedShort());
+                    break;
+                case 8: // String
+                case 19: // Module
+                case 20: // Package
+                    in.skipBytes(2);
+                    break;
+                case 15: // MethodHandle
+                    in.skipBytes(3);
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    in.skipBytes(4);
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    in.skipBytes(8);
+                    // takes two entries
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+        // access flags, this and super class
+        in.skipBytes(6);
+        // interfaces
+        in.skipBytes(2 * in.readUnsignedShort());
+        // fields and methods
+        for (int kind = 0; kind < 2; kind++) {
+            final int members = in.readUnsignedShort();
+            for (int i = 0; i < members; i++) {
+                // access flags and name
+                in.skipBytes(4);
+                descriptorIndexes.add(in.readUnsignedShort());
+                readAttributes(in, utf8, descriptorIndexes);
+            }
+        }
+        readAttributes(in, utf8, descriptorIndexes);
+
+        for (final int index : classIndexes) {
+            final String name = utf8[index];
+            if (name == null) {
+                continue;
+            }
+            if (name.startsWith("[")) {
+                descriptorIndexes.add(index);
+            } else {
+                references.add(name);
+            }
+        }
+        for (final int index : descriptorIndexes) {
+            final String descriptor = index < utf8.length ? utf8[index] : null;
+            if (descriptor == null) {
+                continue;
+            }
+            // field, method and generic signatures
+            new SignatureReader(descriptor, references).read();
+        }
+        if (includeStrings) {
+            for (final String value : utf8) {
+                if (value != null) {
+                    references.add(value.replace('.', '/'));
+                }
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Collects the constant pool indexes of the descriptors and signatures
+     * found in the attributes of a class, field, method or code
+     */
+    private static void readAttributes(final DataInputStream in, final String[] utf8,
+            final Set<Integer> descriptorIndexes) throws IOException {
+        final int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            final String name = utf8[in.readUnsignedShort()];
+            final int length = in.readInt();
+            switch (name == null ? "" : name) {
+                case "Signature":
+                    descriptorIndexes.add(in.readUnsignedShort());
+                    break;
+                case "Code":
+                    // max stack and max locals
+                    in.skipBytes(4);
+                    in.skipBytes(in.readInt());
+                    // exception table
+                    in.skipBytes(8 * in.readUnsignedShort());
+                    readAttributes(in, utf8, descriptorIndexes);
+                    break;
+                case "LocalVariableTable":
+                case "LocalVariableTypeTable":
+                    final int variables = in.readUnsignedShort();
+                    for (int v = 0; v < variables; v++) {
+                        // start, length and name
+                        in.skipBytes(6);
+                        descriptorIndexes.add(in.readUnsignedShort());
+                        // slot
+                        in.skipBytes(2);
+                    }
+                    break;
+                case "RuntimeVisibleAnnotations":
+                case "RuntimeInvisibleAnnotations":
+                    readAnnotations(in, descriptorIndexes);
+                    break;
+                case "RuntimeVisibleParameterAnnotations":
+                case "RuntimeInvisibleParameterAnnotations":
+                    final int parameters = in.readUnsignedByte();
+                    for (int p = 0; p < parameters; p++) {
+                        readAnnotations(in, descriptorIndexes);
+                    }
+                    break;
+                case "AnnotationDefault":
+                    readElementValue(in, descriptorIndexes);
+                    break;
+                default:
+                    in.skipBytes(length);
+            }
+        }
+    }
+
+    private static void readAnnotations(final DataInputStream in, final Set<Integer> descriptorIndexes)
+            throws IOException {
+        final int annotations = in.readUnsignedShort();
+        for (int i = 0; i < annotations; i++) {
+            readAnnotation(in, descriptorIndexes);
+        }
+    }
+
+    private static void readAnnotation(final DataInputStream in, final Set<Integer> descriptorIndexes)
+            throws IOException {
+        descriptorIndexes.add(in.readUnsignedShort());
+        final int pairs = in.readUnsignedShort();
+        for (int i = 0; i < pairs; i++) {
+            // element name
+            in.skipBytes(2);
+            readElementValue(in, descriptorIndexes);
+        }
+    }
+
+    private static void readElementValue(final DataInputStream in, final Set<Integer> descriptorIndexes)
+            throws IOException {
+        final int tag = in.readUnsignedByte();
+        switch (tag) {
+            case 'e':
+                // enum type and constant name
+                descriptorIndexes.add(in.readUnsignedShort());
+                in.skipBytes(2);
+                break;
+            case 'c':
+                descriptorIndexes.add(in.readUnsignedShort());
+                break;
+            case '@':
+                readAnnotation(in, descriptorIndexes);
+                break;
+            case '[':
+                final int values = in.readUnsignedShort();
+                for (int i = 0; i < values; i++) {
+                    readElementValue(in, descriptorIndexes);
+                }
+                break;
+            default:
+                // constant
+                in.skipBytes(2);
+        }
+    }
+
+    /**
+     * Reads the class types of a field or method descriptor, an array class
+     * name or a class, field or method signature. Primitive types, type
+     * variables and wildcards are skipped, inner classes of parameterized
+     * types are reported with their binary name.
+     */
+    private static final class SignatureReader {
+
+        private final String signature;
+        private final Set<String> references;
+        private int position;
+
+        private SignatureReader(final String signature, final Set<String> references) {
+            this.signature = signature;
+            this.references = references;
+        }
+
+        private void read() {
+            if (peek() == '<') {
+                readTypeParameters();
+            }
+            while (position < signature.length()) {
+                final char c = peek();
+                if (c == '(' || c == ')' || c == '^') {
+                    // parameters, return type and thrown types
+                    position++;
+                } else if (!readType()) {
+                    // malformed signature, the types read so far are kept
+                    return;
+                }
+            }
+        }
+
+        private void readTypeParameters() {
+            position++;
+            while (position < signature.length() && peek() != '>') {
+                // the name of the type parameter is followed by its bounds
+                final int bounds = signature.indexOf(':', position);
+                if (bounds < 0) {
+                    position = signature.length();
+                    return;
+                }
+                position = bounds;
+                while (peek() == ':') {
+                    position++;
+                    // the class bound can be empty
+                    if (peek() != ':' && !readType()) {
+                        position = signature.length();
+                        return;
+                    }
+                }
+            }
+            position++;
+        }
+
+        private boolean readType() {
+            final char c = peek();
+            switch (c) {
+                case 'B':
+                case 'C':
+                case 'D':
+                case 'F':
+                case 'I':
+                case 'J':
+                case 'S':
+                case 'Z':
+                case 'V':
+                case '*':
+                    position++;
+                    return true;
+                case '[':
+                case '+':
+                case '-':
+                    position++;
+                    return readType();
+                case 'T':
+                    return skipPast(';');
+                case 'L':
+                    return readClassType();
+                default:
+                    return false;
+            }
+        }
+
+        private boolean readClassType() {
+            position++;
+            final StringBuilder name = new StringBuilder();
+            while (position < signature.length()) {
+                final char c = signature.charAt(position++);
+                switch (c) {
+                    case ';':
+                        references.add(name.toString());
+                        return true;
+                    case '<':
+                        while (peek() != '>') {
+                            if (!readType()) {
+                                return false;
+                            }
+                        }
+                        position++;
+                        break;
+                    case '.':
+                        // inner class of a parameterized type
+                        references.add(name.toString());
+                        name.append('$');
+                        break;
+                    default:
+                        name.append(c);
+                }
+            }
+            return false;
+        }
+
+        private boolean skipPast(final char c) {
+            final int index = signature.indexOf(c, position);
+            position = index < 0 ? signature.length() : index + 1;
+            return index >= 0;
+        }
+
+        private char peek() {
+            return position < signature.length() ? signature.charAt(position) : 0;
+        }
+    }
+
+    /**
+     * Returns the package of the specified JAR entry
+     *
+     * @param entryName the path of the entry in the JAR
+     * @return the package name or {@code null} if the entry is in the root or
+     *         its directory is not a valid package name
+     */
+    public static String getPackageName(final String entryName) {
+        checkNotNull(entryName, "Entry name cannot be null");
+
+        final int index = entryName.lastIndexOf('/');
+        if (index <= 0) {
+            return null;
+        }
+        final String directory = entryName.substring(0, index);
+        for (final String segment : directory.split("/")) {
+            if (segment.isEmpty() || !Character.isJavaIdentifierStart(segment.charAt(0))
+                    || !segment.chars().allMatch(Character::isJavaIdentifierPart)) {
+                return null;
+            }
+        }
+        return directory.replace('/', '.');
+    }
+
+}
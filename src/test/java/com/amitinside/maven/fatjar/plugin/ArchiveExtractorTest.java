@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.TestFixtures.*;
+import static com.google.common.base.Charsets.UTF_8;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+public final class ArchiveExtractorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void matchesArchivesByWholeExtension() {
+        final String[] extensions = { "zip", "tar.gz" };
+
+        assertTrue(ArchiveExtractor.isArchive("dist.zip", extensions));
+        assertTrue(ArchiveExtractor.isArchive("DIST.TAR.GZ", extensions));
+        assertFalse(ArchiveExtractor.isArchive("dist.gzip", extensions));
+        assertFalse(ArchiveExtractor.isArchive("distzip", extensions));
+    }
+
+    @Test
+    public void extractsSameNamedArchivesSeparately() throws Exception {
+        final File first = writeZip(new File(folder.newFolder("first"), "dist.zip"),
+                ImmutableMap.of("lib/a.jar", "first".getBytes(UTF_8)));
+        final File second = writeZip(new File(folder.newFolder("second"), "dist.zip"),
+                ImmutableMap.of("lib/a.jar", "second".getBytes(UTF_8)));
+        final ArchiveExtractor extractor = ArchiveExtractor
+                .newInstance(newConfigurer(folder.getRoot(), folder.newFile("pom.xml")));
+
+        final List<File> extracted = extractor.extract(Arrays.asList(first, second), folder.newFolder("extracted"));
+
+        assertEquals(2, extracted.size());
+        final Set<String> contents = Sets.newHashSet();
+        for (final File file : extracted) {
+            contents.add(Files.asCharSource(file, UTF_8).read());
+        }
+        assertEquals(Sets.newHashSet("first", "second"), contents);
+    }
+
+    @Test
+    public void continuesWithEnclosingArchiveAfterNestedOne() throws Exception {
+        final File inner = writeZip(folder.newFile("inner.zip"), ImmutableMap.of("lib/b.jar", "b".getBytes(UTF_8)));
+        final File outer = writeZip(new File(folder.newFolder("outer"), "dist.zip"),
+                ImmutableMap.of("nested/inner.zip", Files.toByteArray(inner), "lib/a.jar", "a".getBytes(UTF_8)));
+        final ArchiveExtractor extractor = ArchiveExtractor
+                .newInstance(newConfigurer(folder.getRoot(), folder.newFile("pom.xml")));
+
+        final List<File> extracted = extractor.extract(outer, 0, folder.newFolder("extracted"), 1);
+
+        final Set<String> origins = Sets.newHashSet();
+        extracted.forEach(f -> origins.add(extractor.getOrigins().get(f)));
+        assertEquals(Sets.newHashSet("dist.zip!/nested/inner.zip!/lib/b.jar", "dist.zip!/lib/a.jar"), origins);
+    }
+
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
+import static com.amitinside.maven.fatjar.plugin.TestFixtures.*;
+import static com.google.common.base.Charsets.UTF_8;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableMap;
+
+public final class BuildFingerprintTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File repository;
+    private Configurer configurer;
+    private ArtefactResolver resolver;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = folder.newFolder("repository");
+        final File pom = writePom(folder.newFile("pom.xml"), ImmutableMap.of("lib.version", "1.0"),
+                ImmutableMap.of("lib", "${lib.version}"));
+        writeZip(artefact(repository, "lib", "1.0", "jar"), ImmutableMap.of("a.txt", "1".getBytes(UTF_8)));
+        configurer = newConfigurer(folder.getRoot(), pom);
+        resolver = newResolver(repository);
+        final File target = new File(configurer.getAsString(TARGET_DIRECTORY), "test.jar");
+        target.getParentFile().mkdirs();
+        Files.write(target.toPath(), new byte[] { 1 });
+    }
+
+    @Test
+    public void upToDateWithUnchangedInputs() throws Exception {
+        fingerprint(new Properties()).store();
+
+        assertTrue(fingerprint(new Properties()).isUpToDate());
+    }
+
+    @Test
+    public void notUpToDateWithoutTarget() throws Exception {
+        fingerprint(new Properties()).store();
+        new File(configurer.getAsString(TARGET_DIRECTORY), "test.jar").delete();
+
+        assertFalse(fingerprint(new Properties()).isUpToDate());
+    }
+
+    @Test
+    public void notUpToDateWithChangedDependency() throws Exception {
+        fingerprint(new Properties()).store();
+        writeZip(artefact(repository, "lib", "1.0", "jar"), ImmutableMap.of("a.txt", "2".getBytes(UTF_8)));
+
+        assertFalse(fingerprint(new Properties()).isUpToDate());
+    }
+
+    @Test
+    public void notUpToDateWithChangedExtractionMode() throws Exception {
+        fingerprint(new Properties()).store();
+        configurer.put(EXTRACTION_MODE, "full");
+
+        assertFalse(fingerprint(new Properties()).isUpToDate());
+    }
+
+    @Test
+    public void notUpToDateWithChangedVersionsUpdater() throws Exception {
+        fingerprint(new Properties()).store();
+        configurer.put(VERSIONS_UPDATER, "memory");
+
+        assertFalse(fingerprint(new Properties()).isUpToDate());
+    }
+
+    @Test
+    public void fingerprintsOverriddenVersions() throws Exception {
+        writeZip(artefact(repository, "lib", "2.0", "jar"), ImmutableMap.of("a.txt", "2".getBytes(UTF_8)));
+        final Properties overrides = new Properties();
+        overrides.setProperty("lib.version", "2.0");
+        // the declared version is not available locally
+        artefact(repository, "lib", "1.0", "jar").delete();
+        fingerprint(overrides).store();
+
+        assertTrue(fingerprint(overrides).isUpToDate());
+        assertFalse(fingerprint(new Properties()).isUpToDate());
+    }
+
+    @Test
+    public void notUpToDateWithNewlyOverriddenVersion() throws Exception {
+        fingerprint(new Properties()).store();
+        writeZip(artefact(repository, "lib", "2.0", "jar"), ImmutableMap.of("a.txt", "1".getBytes(UTF_8)));
+        final Properties overrides = new Properties();
+        overrides.setProperty("lib.version", "2.0");
+
+        assertFalse(fingerprint(overrides).isUpToDate());
+    }
+
+    @Test
+    public void notUpToDateWithChangedLowMemoryMode() throws Exception {
+        fingerprint(new Properties()).store();
+        configurer.put(LOW_MEMORY, "true");
+
+        assertFalse(fingerprint(new Properties()).isUpToDate());
+    }
+
+    @Test
+    public void notUpToDateWithMissingStartupClassList() throws Exception {
+        final File classList = folder.newFile("classes.lst");
+        configurer.put(STARTUP_CLASS_LIST, classList.getPath());
+        fingerprint(new Properties()).store();
+        classList.delete();
+
+        assertFalse(fingerprint(new Properties()).isUpToDate());
+    }
+
+    @Test
+    public void previousBuildRestoresOverriddenVersions() throws Exception {
+        writeZip(artefact(repository, "lib", "2.0", "jar"), ImmutableMap.of("a.txt", "2".getBytes(UTF_8)));
+        final Properties overrides = new Properties();
+        overrides.setProperty("lib.version", "2.0");
+        configurer.put(UPDATE_VERSION, "true");
+        fingerprint(overrides).store();
+
+        assertTrue(BuildFingerprint.ofPreviousBuild(configurer, resolver, 60_000).isUpToDate());
+    }
+
+    @Test
+    public void previousBuildExpiresWithUpdatedVersions() throws Exception {
+        configurer.put(UPDATE_VERSION, "true");
+        fingerprint(new Properties()).store();
+
+        assertNull(BuildFingerprint.ofPreviousBuild(configurer, resolver, 0));
+    }
+
+    @Test
+    public void previousBuildNeverExpiresWithoutUpdatedVersions() throws Exception {
+        fingerprint(new Properties()).store();
+
+        assertTrue(BuildFingerprint.ofPreviousBuild(configurer, resolver, 0).isUpToDate());
+    }
+
+    @Test
+    public void noPreviousBuildWithoutFingerprint() throws Exception {
+        assertNull(BuildFingerprint.ofPreviousBuild(configurer, resolver, 60_000));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void rejectsMissingVersionOverrides() {
+        BuildFingerprint.newInstance(configurer, resolver, null);
+    }
+
+    private BuildFingerprint fingerprint(final Properties overrides) {
+        return BuildFingerprint.newInstance(configurer, resolver, overrides);
+    }
+
+}
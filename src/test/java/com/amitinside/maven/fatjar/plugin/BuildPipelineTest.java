@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
+import static com.amitinside.maven.fatjar.plugin.TestFixtures.*;
+import static com.google.common.base.Charsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableMap;
+
+public final class BuildPipelineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Configurer configurer;
+    private LocalMavenRepositoryBrowser browser;
+
+    @Before
+    public void setUp() throws Exception {
+        final File repository = folder.newFolder("repository");
+        //@formatter:off
+        final File pom = writePom(folder.newFile("pom.xml"), ImmutableMap.of(),
+                                  ImmutableMap.of("first", "1.0",
+                                                  "dist", "1.0:zip",
+                                                  "last", "1.0"));
+        //@formatter:on
+        writeZip(artefact(repository, "first", "1.0", "jar"), ImmutableMap.of("a/A.class", "A".getBytes(UTF_8)));
+        writeZip(artefact(repository, "last", "1.0", "jar"), ImmutableMap.of("c/C.class", "C".getBytes(UTF_8)));
+        //@formatter:off
+        writeZip(artefact(repository, "dist", "1.0", "zip"),
+                 ImmutableMap.of("lib/inner-1.jar", jar("b/B1.class"),
+                                 "lib/inner-2.jar", jar("b/B2.class"),
+                                 "README.txt", "dist".getBytes(UTF_8)));
+        //@formatter:on
+        configurer = newConfigurer(folder.getRoot(), pom);
+        configurer.put(PIPELINED, "true");
+        configurer.put(PIPELINE_QUEUE_CAPACITY, "1");
+        ((File) configurer.get(SOURCE_DIRECTORY)).mkdirs();
+        browser = LocalMavenRepositoryBrowser.newInstance(configurer, newResolver(repository), new Properties());
+    }
+
+    @Test
+    public void keepsClasspathInOrderOfDeclaration() throws Exception {
+        final Set<String> analyzed = ConcurrentHashMap.newKeySet();
+
+        final BuildPipeline.Result result = BuildPipeline.newInstance(configurer, browser)
+                .run(folder.newFolder("extracted"), jar -> analyzed.add(jar.getName()));
+
+        final List<String> classpath = result.getClasspath().stream().map(File::getName).collect(toList());
+        assertEquals(Arrays.asList("first-1.0.jar", "inner-1.jar", "inner-2.jar", "last-1.0.jar"), classpath);
+        assertEquals(classpath.size(), analyzed.size());
+        assertEquals(2, result.getExtractedFiles().size());
+    }
+
+    @Test
+    public void propagatesFailureOfAnyStage() throws Exception {
+        final IOException failure = new IOException("inner-2.jar cannot be analyzed");
+
+        try {
+            BuildPipeline.newInstance(configurer, browser).run(folder.newFolder("extracted"), jar -> {
+                if (jar.getName().equals("inner-2.jar")) {
+                    throw failure;
+                }
+            });
+            fail("Failure of the analysis has not been propagated");
+        } catch (final IOException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    private static byte[] jar(final String entry) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            out.putNextEntry(new ZipEntry(entry));
+            out.write(entry.getBytes(UTF_8));
+            out.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.TestFixtures.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amitinside.maven.fatjar.plugin.ClasspathAnalyzer.Analysis;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+public final class ClasspathAnalyzerTest {
+
+    private static final String PACKAGE = ClasspathAnalyzerTest.class.getPackage().getName();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Configurer configurer;
+
+    @Before
+    public void setUp() throws Exception {
+        configurer = newConfigurer(folder.getRoot(), folder.newFile("pom.xml"));
+    }
+
+    @Test
+    public void exportsContainedPackages() throws Exception {
+        final File jar = writeZip(folder.newFile("a.jar"), ImmutableMap.of(entry(Sample.class), bytes(Sample.class)));
+
+        final Analysis analysis = ClasspathAnalyzer.newInstance(configurer).analyze(Collections.singletonList(jar));
+
+        assertEquals(Collections.singleton(PACKAGE), analysis.getExports().keySet());
+    }
+
+    @Test
+    public void importsReferencedExportsToBeSubstitutable() throws Exception {
+        final File jar = writeZip(folder.newFile("a.jar"), ImmutableMap.of(entry(Sample.class), bytes(Sample.class)));
+
+        final Analysis analysis = ClasspathAnalyzer.newInstance(configurer).analyze(Collections.singletonList(jar));
+
+        assertTrue(analysis.getImports().contains(PACKAGE));
+        assertTrue(analysis.getImports().contains("com.google.common.collect"));
+        assertFalse(analysis.getImports().contains("java.util"));
+    }
+
+    @Test
+    public void reportsSplitPackages() throws Exception {
+        final File first = writeZip(folder.newFile("a.jar"), ImmutableMap.of(entry(Sample.class), bytes(Sample.class)));
+        final File second = writeZip(folder.newFile("b.jar"),
+                ImmutableMap.of(entry(ClasspathAnalyzerTest.class), bytes(ClasspathAnalyzerTest.class)));
+
+        final Analysis analysis = ClasspathAnalyzer.newInstance(configurer).analyze(Arrays.asList(first, second));
+
+        assertEquals(Arrays.asList(first, second), analysis.getSplitPackages().get(PACKAGE));
+    }
+
+    @Test
+    public void analyzesJarChangedInPlaceAgain() throws Exception {
+        final File jar = writeZip(folder.newFile("a.jar"), ImmutableMap.of(entry(Sample.class), bytes(Sample.class)));
+        final ClasspathAnalyzer analyzer = ClasspathAnalyzer.newInstance(configurer);
+        analyzer.prepare(jar);
+
+        writeZip(jar, ImmutableMap.of("org/example/Other.class", bytes(Sample.class)));
+        final Analysis analysis = analyzer.analyze(Collections.singletonList(jar));
+
+        assertEquals(Collections.singleton("org.example"), analysis.getExports().keySet());
+    }
+
+    static String entry(final Class<?> clazz) {
+        return clazz.getName().replace('.', '/') + ".class";
+    }
+
+    static byte[] bytes(final Class<?> clazz) throws IOException {
+        try (InputStream in = clazz.getResourceAsStream('/' + entry(clazz))) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Sample {
+
+        private Configurer configurer;
+        private ImmutableMap<String, java.util.List<String>> values;
+    }
+
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.DEPENDENCIES;
+import static com.amitinside.maven.fatjar.plugin.TestFixtures.*;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.maven.model.Dependency;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableMap;
+
+public final class DependencyCollectorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void takesManagedVersionsFromEffectiveModel() throws Exception {
+        final Configurer configurer = configurer(ImmutableMap.of(), ImmutableMap.of("managed", ""),
+                dependency("managed", "2.1"));
+
+        assertEquals(Arrays.asList("managed:2.1"), collect(configurer, new Properties()));
+    }
+
+    @Test
+    public void takesPropertyVersionsFromPomOnDisk() throws Exception {
+        // the versions updater has changed the property after the project has been loaded
+        final Configurer configurer = configurer(ImmutableMap.of("lib.version", "1.1"),
+                ImmutableMap.of("lib", "${lib.version}"), dependency("lib", "1.0"));
+
+        assertEquals(Arrays.asList("lib:1.1"), collect(configurer, new Properties()));
+    }
+
+    @Test
+    public void appliesVersionOverrides() throws Exception {
+        final Configurer configurer = configurer(ImmutableMap.of("lib.version", "1.0"),
+                ImmutableMap.of("lib", "${lib.version}"), dependency("lib", "1.0"));
+        final Properties overrides = new Properties();
+        overrides.setProperty("lib.version", "2.0");
+
+        assertEquals(Arrays.asList("lib:2.0"), collect(configurer, overrides));
+    }
+
+    @Test
+    public void keepsInheritedAndAddsNewlyDeclaredDependencies() throws Exception {
+        final Configurer configurer = configurer(ImmutableMap.of(), ImmutableMap.of("added", "3.0"),
+                dependency("inherited", "1.0"));
+
+        assertEquals(Arrays.asList("inherited:1.0", "added:3.0"), collect(configurer, new Properties()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsUndeterminableVersions() throws Exception {
+        final Configurer configurer = configurer(ImmutableMap.of(), ImmutableMap.of("unmanaged", ""));
+
+        collect(configurer, new Properties());
+    }
+
+    private Configurer configurer(final ImmutableMap<String, String> properties,
+            final ImmutableMap<String, String> declared, final Dependency... effective) throws Exception {
+        final File pom = writePom(folder.newFile("pom.xml"), properties, declared);
+        final Configurer configurer = newConfigurer(folder.getRoot(), pom);
+        configurer.put(DEPENDENCIES, effective.length == 0 ? Collections.emptyList() : Arrays.asList(effective));
+        return configurer;
+    }
+
+    private static List<String> collect(final Configurer configurer, final Properties overrides)
+            throws Exception {
+        //@formatter:off
+        return DependencyCollector.newInstance(configurer, overrides)
+                                  .collect()
+                                  .stream()
+                                  .map(d -> d.getArtifactId() + ':' + d.getVersion())
+                                  .collect(toList());
+        //@formatter:on
+    }
+
+    private static Dependency dependency(final String artifactId, final String version) {
+        final Dependency dependency = new Dependency();
+        dependency.setGroupId(GROUP_ID);
+        dependency.setArtifactId(artifactId);
+        dependency.setVersion(version);
+        return dependency;
+    }
+
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class ExtractionCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File cacheDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDirectory = folder.newFolder("cache");
+    }
+
+    @Test
+    public void storesOnlyIncludedFiles() throws Exception {
+        final ExtractionCache cache = ExtractionCache.newInstance(cacheDirectory, 1024, "");
+        final File staging = cache.newStagingDirectory();
+        final File included = write(new File(staging, "lib/a.jar"), 10);
+        write(new File(staging, "docs/readme.txt"), 100);
+
+        final List<File> cached = cache.put("key", staging, Collections.singletonList(included));
+
+        assertEquals(Collections.singletonList(new File(cache.getDirectory("key"), "lib/a.jar")), cached);
+        assertFalse(new File(cache.getDirectory("key"), "docs/readme.txt").exists());
+        assertEquals(cached, cache.get("key"));
+    }
+
+    @Test
+    public void replacesIncompleteEntries() throws Exception {
+        final ExtractionCache cache = ExtractionCache.newInstance(cacheDirectory, 1024, "");
+        final File staging = cache.newStagingDirectory();
+        final File a = write(new File(staging, "lib/a.jar"), 10);
+        final File b = write(new File(staging, "lib/b.jar"), 10);
+        cache.put("key", staging, Arrays.asList(a, b));
+        new File(cache.getDirectory("key"), "lib/b.jar").delete();
+
+        assertNull(cache.get("key"));
+        final File restaged = cache.newStagingDirectory();
+        final List<File> cached = cache.put("key", restaged, Arrays.asList(write(new File(restaged, "lib/a.jar"), 10),
+                write(new File(restaged, "lib/b.jar"), 10)));
+
+        assertEquals(2, cached.size());
+        assertEquals(cached, cache.get("key"));
+    }
+
+    @Test
+    public void replacesIncompleteEntriesWhileStoring() throws Exception {
+        final ExtractionCache cache = ExtractionCache.newInstance(cacheDirectory, 1024, "");
+        final File staging = cache.newStagingDirectory();
+        cache.put("key", staging, Collections.singletonList(write(new File(staging, "lib/a.jar"), 10)));
+        new File(cache.getDirectory("key"), "lib/a.jar").delete();
+
+        final File restaged = cache.newStagingDirectory();
+        final List<File> cached = cache.put("key", restaged,
+                Collections.singletonList(write(new File(restaged, "lib/a.jar"), 10)));
+
+        assertEquals(cached, cache.get("key"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntries() throws Exception {
+        final ExtractionCache previousBuild = ExtractionCache.newInstance(cacheDirectory, 1024, "");
+        store(previousBuild, "oldest", 10, 4);
+        store(previousBuild, "older", 10, 3);
+        store(previousBuild, "old", 10, 2);
+
+        ExtractionCache.newInstance(cacheDirectory, 25, "").evict();
+
+        assertNull(previousBuild.get("oldest"));
+        assertNotNull(previousBuild.get("older"));
+        assertNotNull(previousBuild.get("old"));
+    }
+
+    @Test
+    public void measuresOnlyIncludedFiles() throws Exception {
+        final ExtractionCache previousBuild = ExtractionCache.newInstance(cacheDirectory, 1024, "");
+        final File staging = previousBuild.newStagingDirectory();
+        final File included = write(new File(staging, "a.jar"), 10);
+        write(new File(staging, "b.txt"), 100);
+        previousBuild.put("key", staging, Collections.singletonList(included));
+        age("key", 2);
+
+        ExtractionCache.newInstance(cacheDirectory, 20, "").evict();
+
+        assertNotNull(previousBuild.get("key"));
+    }
+
+    @Test
+    public void keepsEntriesUsedByThisBuild() throws Exception {
+        final ExtractionCache cache = ExtractionCache.newInstance(cacheDirectory, 5, "");
+        store(cache, "used", 10, 2);
+
+        cache.evict();
+
+        assertNotNull(cache.get("used"));
+    }
+
+    @Test
+    public void keepsEntriesRecentlyUsedByConcurrentBuilds() throws Exception {
+        final ExtractionCache concurrentBuild = ExtractionCache.newInstance(cacheDirectory, 1024, "");
+        store(concurrentBuild, "first", 10, 0);
+        store(concurrentBuild, "second", 10, 0);
+
+        ExtractionCache.newInstance(cacheDirectory, 5, "").evict();
+
+        assertNotNull(concurrentBuild.get("first"));
+        assertNotNull(concurrentBuild.get("second"));
+    }
+
+    @Test
+    public void evictsAbandonedStagingDirectories() throws Exception {
+        final ExtractionCache crashedBuild = ExtractionCache.newInstance(cacheDirectory, 1024, "");
+        final File abandoned = crashedBuild.newStagingDirectory();
+        write(new File(abandoned, "a.jar"), 10);
+        Files.setLastModifiedTime(abandoned.toPath(), hoursAgo(2));
+        final File inProgress = crashedBuild.newStagingDirectory();
+
+        ExtractionCache.newInstance(cacheDirectory, 1024, "").evict();
+
+        assertFalse(abandoned.exists());
+        assertTrue(inProgress.exists());
+    }
+
+    private void store(final ExtractionCache cache, final String key, final int size, final int hoursAgo)
+            throws IOException {
+        final File staging = cache.newStagingDirectory();
+        cache.put(key, staging, Collections.singletonList(write(new File(staging, key + ".jar"), size)));
+        age(key, hoursAgo);
+    }
+
+    private void age(final String key, final int hoursAgo) throws IOException {
+        if (hoursAgo > 0) {
+            Files.setLastModifiedTime(new File(new File(cacheDirectory, key), ".index").toPath(), hoursAgo(hoursAgo));
+        }
+    }
+
+    private static FileTime hoursAgo(final int hours) {
+        return FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(hours));
+    }
+
+    private static File write(final File file, final int size) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), new byte[size]);
+        return file;
+    }
+
+}
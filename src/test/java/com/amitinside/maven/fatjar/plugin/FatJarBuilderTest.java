@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.ClasspathAnalyzerTest.*;
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
+import static com.amitinside.maven.fatjar.plugin.TestFixtures.*;
+import static com.google.common.base.Charsets.UTF_8;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+public final class FatJarBuilderTest {
+
+    private static final String PACKAGE = FatJarBuilderTest.class.getPackage().getName();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Configurer configurer;
+
+    @Before
+    public void setUp() throws Exception {
+        configurer = newConfigurer(folder.getRoot(), folder.newFile("pom.xml"));
+        configurer.put(LOW_MEMORY, "true");
+        new File(configurer.getAsString(TARGET_DIRECTORY)).mkdirs();
+    }
+
+    @Test
+    public void streamsPackagesOfClasspathWithAnalyzedHeaders() throws Exception {
+        //@formatter:off
+        final File first = writeZip(folder.newFile("a.jar"),
+                                    ImmutableMap.of(entry(Sample.class), bytes(Sample.class),
+                                                    "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n".getBytes(UTF_8),
+                                                    "root.txt", "root".getBytes(UTF_8)));
+        final File second = writeZip(folder.newFile("b.jar"),
+                                     ImmutableMap.of(entry(Sample.class), bytes(FatJarBuilderTest.class),
+                                                     "org/example/data.txt", "data".getBytes(UTF_8)));
+        //@formatter:on
+        final FatJarBuilder builder = FatJarBuilder.newInstance(configurer, new MavenProject(),
+                Collections.emptyList(), new SystemStreamLog());
+
+        builder.buildStreamingBundle(bundle(), Arrays.asList(first, second));
+
+        try (JarFile jar = new JarFile(new File(configurer.getAsString(TARGET_DIRECTORY), "test.jar"))) {
+            final Attributes main = jar.getManifest().getMainAttributes();
+            assertEquals("test.bundle", main.getValue("Bundle-SymbolicName"));
+            assertTrue(main.getValue("Export-Package").contains(PACKAGE + ";version=\"1.0.0\""));
+            assertTrue(main.getValue("Export-Package").contains("org.example;version=\"1.0.0\""));
+            assertTrue(main.getValue("Import-Package").contains("com.google.common.collect"));
+            try (InputStream in = jar.getInputStream(jar.getEntry(entry(Sample.class)))) {
+                // the first JAR on the classpath wins
+                assertArrayEquals(bytes(Sample.class), ByteStreams.toByteArray(in));
+            }
+            assertNotNull(jar.getEntry("org/example/data.txt"));
+            assertNull(jar.getEntry("root.txt"));
+        }
+    }
+
+    private static Bundle bundle() {
+        return Bundle.newInstance("test.bundle", "1.0.0", "test.jar", null, null, null);
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Sample {
+
+        private ImmutableMap<String, String> values;
+    }
+
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.ClasspathAnalyzerTest.*;
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
+import static com.amitinside.maven.fatjar.plugin.TestFixtures.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.zip.ZipFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+
+public final class MinimizerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsClassesReachableThroughMethodDescriptors() throws Exception {
+        //@formatter:off
+        final File jar = writeZip(folder.newFile("a.jar"),
+                                  ImmutableMap.of(entry(Root.class), bytes(Root.class),
+                                                  entry(Stopwatch.class), bytes(Stopwatch.class),
+                                                  entry(Unused.class), bytes(Unused.class)));
+        //@formatter:on
+        final Configurer configurer = newConfigurer(folder.getRoot(), folder.newFile("pom.xml"));
+        configurer.put(MINIMIZATION_ROOTS, new String[] { Root.class.getName() });
+        final File minimized = new File(folder.getRoot(), "minimized.jar");
+
+        Minimizer.newInstance(configurer).minimize(Bundle.newInstance("test.bundle", "1.0.0", "test.jar", null,
+                null, null), Collections.singletonList(jar), minimized, folder.newFile("report.txt"));
+
+        try (ZipFile zip = new ZipFile(minimized)) {
+            assertNotNull(zip.getEntry(entry(Root.class)));
+            // only referenced after a primitive parameter
+            assertNotNull(zip.getEntry(entry(Stopwatch.class)));
+            assertNull(zip.getEntry(entry(Unused.class)));
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Root {
+
+        private void measure(final int count, final Stopwatch stopwatch) {
+            // only the descriptor matters
+        }
+    }
+
+    private static final class Unused {
+    }
+
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.TestFixtures.writeZip;
+import static com.google.common.base.Charsets.UTF_8;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableMap;
+
+public final class PatchIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reusesUnchangedEntriesOfStoredIndex() throws Exception {
+        final File jar = writeZip(folder.newFile("a.jar"), ImmutableMap.of("a/A.class", "A".getBytes(UTF_8)));
+        final File target = writeZip(folder.newFile("bundle.jar"), ImmutableMap.of("a/A.class", "A".getBytes(UTF_8)));
+        final PatchIndex index = PatchIndex.ofClasspath(Collections.singletonList(jar));
+        index.setWriterSettings("level=9");
+        index.store(target);
+
+        final PatchIndex previous = PatchIndex.load(target);
+        final PatchIndex current = PatchIndex.ofClasspath(Collections.singletonList(jar));
+        current.setWriterSettings("level=9");
+
+        assertTrue(current.isUnchanged("a/A.class", previous));
+    }
+
+    @Test
+    public void compressesEntriesWrittenWithOtherSettingsAgain() throws Exception {
+        final File jar = writeZip(folder.newFile("a.jar"), ImmutableMap.of("a/A.class", "A".getBytes(UTF_8)));
+        final PatchIndex previous = PatchIndex.ofClasspath(Collections.singletonList(jar));
+        previous.setWriterSettings("level=9");
+
+        final PatchIndex current = PatchIndex.ofClasspath(Collections.singletonList(jar));
+        current.setWriterSettings("level=1");
+
+        assertFalse(current.isUnchanged("a/A.class", previous));
+    }
+
+    @Test
+    public void compressesChangedEntriesAgain() throws Exception {
+        final File jar = writeZip(folder.newFile("a.jar"), ImmutableMap.of("a/A.class", "A".getBytes(UTF_8)));
+        final PatchIndex previous = PatchIndex.ofClasspath(Collections.singletonList(jar));
+
+        writeZip(jar, ImmutableMap.of("a/A.class", "B".getBytes(UTF_8)));
+
+        assertFalse(PatchIndex.ofClasspath(Collections.singletonList(jar)).isUnchanged("a/A.class", previous));
+    }
+
+    @Test
+    public void reusesEntriesOfReorderedAndExtendedClasspath() throws Exception {
+        final File first = writeZip(folder.newFile("a.jar"), ImmutableMap.of("a/A.class", "A".getBytes(UTF_8)));
+        final File second = writeZip(folder.newFile("b.jar"), ImmutableMap.of("b/B.class", "B".getBytes(UTF_8)));
+        final File added = writeZip(folder.newFile("c.jar"), ImmutableMap.of("c/C.class", "C".getBytes(UTF_8)));
+        final PatchIndex previous = PatchIndex.ofClasspath(Arrays.asList(first, second));
+
+        final PatchIndex current = PatchIndex.ofClasspath(Arrays.asList(added, second, first));
+
+        assertTrue(current.isUnchanged("a/A.class", previous));
+        assertTrue(current.isUnchanged("b/B.class", previous));
+        assertFalse(current.isUnchanged("c/C.class", previous));
+    }
+
+    @Test
+    public void compressesEntriesTakenFromAnotherJarAgain() throws Exception {
+        final File first = writeZip(folder.newFile("a.jar"), ImmutableMap.of("a/A.class", "A".getBytes(UTF_8)));
+        final File second = writeZip(folder.newFile("b.jar"), ImmutableMap.of("a/A.class", "B".getBytes(UTF_8)));
+        final PatchIndex previous = PatchIndex.ofClasspath(Arrays.asList(first, second));
+
+        assertFalse(PatchIndex.ofClasspath(Arrays.asList(second, first)).isUnchanged("a/A.class", previous));
+    }
+
+    @Test
+    public void detectsFileChangedWithSameSizeAndModificationTime() throws Exception {
+        final File file = folder.newFile("a.jar");
+        Files.write(file.toPath(), "A".getBytes(UTF_8));
+        final long lastModified = file.lastModified();
+        final PatchIndex previous = PatchIndex.ofFiles(ImmutableMap.of("lib/a.jar", file));
+
+        Files.write(file.toPath(), "B".getBytes(UTF_8));
+        file.setLastModified(lastModified);
+
+        assertFalse(PatchIndex.ofFiles(ImmutableMap.of("lib/a.jar", file)).isUnchanged("lib/a.jar", previous));
+        assertTrue(PatchIndex.ofFiles(ImmutableMap.of("lib/a.jar", file))
+                .isUnchanged("lib/a.jar", PatchIndex.ofFiles(ImmutableMap.of("lib/a.jar", file))));
+    }
+
+    @Test
+    public void ignoresIndexOfModifiedTarget() throws Exception {
+        final File jar = writeZip(folder.newFile("a.jar"), ImmutableMap.of("a/A.class", "A".getBytes(UTF_8)));
+        final File target = writeZip(folder.newFile("bundle.jar"), ImmutableMap.of("a/A.class", "A".getBytes(UTF_8)));
+        final PatchIndex index = PatchIndex.ofClasspath(Collections.singletonList(jar));
+        index.setWriterSettings("level=9");
+        index.store(target);
+
+        writeZip(target, ImmutableMap.of("a/A.class", "AA".getBytes(UTF_8)));
+
+        assertNull(PatchIndex.load(target));
+    }
+
+}
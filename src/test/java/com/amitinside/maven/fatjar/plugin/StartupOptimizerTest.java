@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.STARTUP_CLASS_LIST;
+import static com.amitinside.maven.fatjar.plugin.TestFixtures.*;
+import static com.google.common.base.Charsets.UTF_8;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableMap;
+
+public final class StartupOptimizerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StartupOptimizer optimizer;
+    private File target;
+
+    @Before
+    public void setUp() throws Exception {
+        final File classList = folder.newFile("startup.lst");
+        Files.write(classList.toPath(), Arrays.asList("a/A", "b/B"), UTF_8);
+        final Configurer configurer = newConfigurer(folder.getRoot(), folder.newFile("pom.xml"));
+        configurer.put(STARTUP_CLASS_LIST, classList.getPath());
+        optimizer = StartupOptimizer.newInstance(configurer);
+        //@formatter:off
+        target = writeZip(folder.newFile("bundle.jar"), ImmutableMap.of("META-INF/", new byte[0],
+                                                                        "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n".getBytes(UTF_8),
+                                                                        "b/B.class", "B".getBytes(UTF_8),
+                                                                        "a/A.class", "A".getBytes(UTF_8),
+                                                                        "c/data.txt", "C".getBytes(UTF_8)));
+        //@formatter:on
+    }
+
+    @Test
+    public void movesStartupClassesToTheFront() throws Exception {
+        optimizer.optimize(bundle(), target, folder.getRoot());
+
+        assertEquals(Arrays.asList("META-INF/", "META-INF/MANIFEST.MF", "a/A.class", "b/B.class", "c/data.txt"),
+                entries(target));
+    }
+
+    @Test
+    public void leavesBundleInStartupOrderUntouched() throws Exception {
+        optimizer.optimize(bundle(), target, folder.getRoot());
+        final long lastModified = 1_000_000_000L;
+        target.setLastModified(lastModified);
+
+        optimizer.optimize(bundle(), target, folder.getRoot());
+
+        assertEquals(lastModified, target.lastModified());
+        assertEquals(Arrays.asList("META-INF/", "META-INF/MANIFEST.MF", "a/A.class", "b/B.class", "c/data.txt"),
+                entries(target));
+    }
+
+    private static List<String> entries(final File jar) throws Exception {
+        try (ZipFile zip = new ZipFile(jar)) {
+            return Collections.list(zip.entries()).stream().map(ZipEntry::getName).collect(Collectors.toList());
+        }
+    }
+
+    private static Bundle bundle() {
+        return Bundle.newInstance("test.bundle", "1.0.0", "bundle.jar", null, null, null);
+    }
+
+}
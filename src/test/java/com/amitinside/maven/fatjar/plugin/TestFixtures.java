@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin;
+
+import static com.amitinside.maven.fatjar.plugin.Configurer.Params.*;
+import static com.google.common.base.Charsets.UTF_8;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.ArtifactTypeRegistry;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResult;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Configurations, POMs, JARs and an in-memory repository system for the tests
+ */
+final class TestFixtures {
+
+    static final String GROUP_ID = "com.example";
+
+    private TestFixtures() {
+        throw new IllegalAccessError("Cannot instantiate");
+    }
+
+    /**
+     * Creates a configuration equivalent to the defaults of the mojo
+     * parameters whose directories are located in the specified directory
+     */
+    static Configurer newConfigurer(final File workDirectory, final File pom) {
+        final Configurer configurer = Configurer.newInstance();
+        //@formatter:off
+        configurer.put(POM_LOCATION, pom.getPath());
+        configurer.put(BUNDLES, Lists.newArrayList(Bundle.newInstance("test.bundle", "1.0.0", "test.jar", null, null, null)));
+        configurer.put(BUNDLE_RESOLVABLE, "false");
+        configurer.put(EXTENSION_TO_UNARCHIVE, new String[] { "zip" });
+        configurer.put(SOURCE_DIRECTORY, new File(workDirectory, "source"));
+        configurer.put(TARGET_DIRECTORY, new File(workDirectory, "target").getPath());
+        configurer.put(UPDATE_VERSION, "false");
+        configurer.put(PLUGIN_VERSION, "test");
+        configurer.put(REPRODUCIBLE_OUTPUT, "false");
+        configurer.put(WRITER_THREADS, "0");
+        configurer.put(COMPRESSION_LEVEL, "6");
+        configurer.put(STORE_COMPRESSED_ENTRIES, "false");
+        configurer.put(WRITER_MEMORY, "256");
+        configurer.put(LOW_MEMORY, "false");
+        configurer.put(MINIMIZE, "false");
+        configurer.put(USE_ANALYSIS_INDEX, "false");
+        configurer.put(ANALYSIS_INDEX_DIRECTORY, new File(workDirectory, "analysis").getPath());
+        configurer.put(ANALYSIS_THREADS, "0");
+        configurer.put(FAIL_ON_CLASS_CONFLICTS, "false");
+        configurer.put(EMBED_DEPENDENCIES, "false");
+        configurer.put(INCREMENTAL, "false");
+        configurer.put(STARTUP_TRAINING, "false");
+        configurer.put(STARTUP_TRAINING_TIMEOUT, "300");
+        configurer.put(STARTUP_ARCHIVE, "false");
+        configurer.put(WRITE_COMPOSITION_REPORT, "false");
+        configurer.put(BUNDLE_SIZE_BUDGET, "0");
+        configurer.put(BUNDLE_ENTRY_BUDGET, "0");
+        configurer.put(DEPENDENCY_SIZE_BUDGET, "0");
+        configurer.put(EXTRACTION_THREADS, "0");
+        configurer.put(EXTRACTION_MODE, "streaming");
+        configurer.put(EXTRACTION_INCLUDES, new String[] { "**/*.jar" });
+        configurer.put(NESTED_ARCHIVE_DEPTH, "2");
+        configurer.put(USE_EXTRACTION_CACHE, "false");
+        configurer.put(EXTRACTION_CACHE_DIRECTORY, new File(workDirectory, "extraction").getPath());
+        configurer.put(EXTRACTION_CACHE_SIZE, "4096");
+        configurer.put(STAGING_MODE, "copy");
+        configurer.put(PIPELINED, "false");
+        configurer.put(PIPELINE_QUEUE_CAPACITY, "16");
+        configurer.put(STAGING_THREADS, "4");
+        configurer.put(VERSIONS_UPDATER, "plugin");
+        //@formatter:on
+        return configurer;
+    }
+
+    /**
+     * Writes a POM declaring the specified dependencies of {@link #GROUP_ID}
+     *
+     * @param pom the file to write to
+     * @param properties the properties of the POM
+     * @param dependencies the artefact identifiers mapped to their versions,
+     *            empty if managed, and optionally their types separated by a
+     *            colon
+     */
+    static File writePom(final File pom, final Map<String, String> properties, final Map<String, String> dependencies)
+            throws IOException {
+        final StringBuilder xml = new StringBuilder();
+        xml.append("<project>\n  <modelVersion>4.0.0</modelVersion>\n");
+        xml.append("  <groupId>").append(GROUP_ID).append("</groupId>\n");
+        xml.append("  <artifactId>test</artifactId>\n  <version>1.0.0</version>\n");
+        xml.append("  <properties>\n");
+        properties.forEach((k, v) -> xml.append("    <").append(k).append('>').append(v).append("</").append(k)
+                .append(">\n"));
+        xml.append("  </properties>\n  <dependencies>\n");
+        dependencies.forEach((artifactId, coordinates) -> {
+            final String[] parts = coordinates.split(":");
+            xml.append("    <dependency>\n");
+            xml.append("      <groupId>").append(GROUP_ID).append("</groupId>\n");
+            xml.append("      <artifactId>").append(artifactId).append("</artifactId>\n");
+            if (!parts[0].isEmpty()) {
+                xml.append("      <version>").append(parts[0]).append("</version>\n");
+            }
+            if (parts.length > 1) {
+                xml.append("      <type>").append(parts[1]).append("</type>\n");
+            }
+            xml.append("    </dependency>\n");
+        });
+        xml.append("  </dependencies>\n</project>\n");
+        Files.write(pom.toPath(), xml.toString().getBytes(UTF_8));
+        return pom;
+    }
+
+    /**
+     * Writes a ZIP archive with the specified entries
+     */
+    static File writeZip(final File zip, final Map<String, byte[]> entries) throws IOException {
+        zip.getParentFile().mkdirs();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            for (final Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        return zip;
+    }
+
+    /**
+     * Returns the location of an artefact of {@link #GROUP_ID} in the
+     * repository used by {@link #newResolver(File)}
+     */
+    static File artefact(final File repository, final String artifactId, final String version,
+            final String extension) {
+        return new File(repository, path(artifactId, version, extension));
+    }
+
+    /**
+     * Creates a resolver resolving every artefact from the specified directory
+     * which serves as local repository
+     */
+    static ArtefactResolver newResolver(final File repository) {
+        final ClassLoader loader = TestFixtures.class.getClassLoader();
+        final LocalRepository localRepository = new LocalRepository(repository);
+        final LocalRepositoryManager manager = (LocalRepositoryManager) Proxy.newProxyInstance(loader,
+                new Class<?>[] { LocalRepositoryManager.class }, (proxy, method, args) -> {
+                    final Artifact artifact = (Artifact) args[0];
+                    return path(artifact.getArtifactId(), artifact.getVersion(), artifact.getExtension());
+                });
+        final ArtifactTypeRegistry types = (ArtifactTypeRegistry) Proxy.newProxyInstance(loader,
+                new Class<?>[] { ArtifactTypeRegistry.class }, (proxy, method, args) -> null);
+        final RepositorySystemSession session = (RepositorySystemSession) Proxy.newProxyInstance(loader,
+                new Class<?>[] { RepositorySystemSession.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getLocalRepositoryManager":
+                            return manager;
+                        case "getLocalRepository":
+                            return localRepository;
+                        case "getArtifactTypeRegistry":
+                            return types;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        final RepositorySystem system = (RepositorySystem) Proxy.newProxyInstance(loader,
+                new Class<?>[] { RepositorySystem.class }, (proxy, method, args) -> {
+                    final ArtifactRequest request = (ArtifactRequest) args[1];
+                    final Artifact artifact = request.getArtifact();
+                    final File file = artefact(repository, artifact.getArtifactId(), artifact.getVersion(),
+                            artifact.getExtension());
+                    if (!file.isFile()) {
+                        throw new IllegalStateException("Cannot resolve " + artifact);
+                    }
+                    final ArtifactResult result = new ArtifactResult(request);
+                    result.setArtifact(artifact.setFile(file));
+                    return result;
+                });
+        return ArtefactResolver.newInstance(system, session, Collections.emptyList(), 2);
+    }
+
+    private static String path(final String artifactId, final String version, final String extension) {
+        return GROUP_ID.replace('.', '/') + '/' + artifactId + '/' + version + '/' + artifactId + '-' + version + '.'
+                + extension;
+    }
+
+}
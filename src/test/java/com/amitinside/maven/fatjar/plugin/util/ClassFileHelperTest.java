@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Amit Kumar Mondal
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package com.amitinside.maven.fatjar.plugin.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.BitSet;
+import java.util.Currency;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+public final class ClassFileHelperTest {
+
+    @Test
+    public void collectsTypesOfDescriptorsAndSignatures() throws Exception {
+        final Set<String> types = ClassFileHelper.getReferencedTypes(read(Sample.class), false);
+
+        assertTrue(types.contains("java/util/concurrent/atomic/AtomicLong"));
+        assertTrue(types.contains("java/util/UUID"));
+        assertTrue(types.contains("java/lang/Deprecated"));
+    }
+
+    @Test
+    public void collectsTypesFollowingPrimitivesInDescriptors() throws Exception {
+        final Set<String> types = ClassFileHelper.getReferencedTypes(read(Sample.class), false);
+
+        assertTrue(types.contains("java/util/BitSet"));
+        assertTrue(types.contains("java/util/Locale"));
+        assertTrue(types.contains("java/util/Currency"));
+        assertTrue(types.contains("java/util/Optional"));
+    }
+
+    @Test
+    public void ignoresStringConstantsLookingLikeDescriptors() throws Exception {
+        final Set<String> types = ClassFileHelper.getReferencedTypes(read(Sample.class), false);
+
+        assertFalse(types.contains("com/example/Bogus"));
+    }
+
+    @Test
+    public void includesStringConstantsOnRequest() throws Exception {
+        final Set<String> types = ClassFileHelper.getReferencedTypes(read(Sample.class), true);
+
+        assertTrue(types.contains("com/example/Reflective"));
+    }
+
+    @Test
+    public void parsesLibraryClasses() throws Exception {
+        final Set<String> types = ClassFileHelper.getReferencedTypes(read(ImmutableMap.class), false);
+
+        assertTrue(types.contains("com/google/common/collect/ImmutableSet"));
+    }
+
+    private static byte[] read(final Class<?> clazz) throws IOException {
+        final String resource = '/' + clazz.getName().replace('.', '/') + ".class";
+        try (InputStream in = clazz.getResourceAsStream(resource)) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Sample {
+
+        private static final String DESCRIPTOR_LIKE = "Lcom/example/Bogus;";
+        private static final String REFLECTIVE = "com.example.Reflective";
+
+        private AtomicLong counter;
+
+        @Deprecated
+        private void consume(final List<UUID> ids) {
+            // only the signature matters
+        }
+
+        private Optional<Currency[]> mix(final int count, final BitSet bits, final long size, final boolean flag,
+                final Locale locale) {
+            return null;
+        }
+    }
+
+}